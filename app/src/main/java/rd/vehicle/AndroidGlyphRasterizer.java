@@ -0,0 +1,52 @@
+package rd.vehicle;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Typeface;
+
+import java.nio.ByteBuffer;
+
+/** Rasterizes the glyph atlas in the system's monospaced font */
+final class AndroidGlyphRasterizer implements GlyphAtlas.Rasterizer
+{
+    @Override
+    public GlyphAtlas rasterize(float textSize)
+    {
+        Paint paint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        paint.setTypeface(Typeface.MONOSPACE);
+        paint.setTextSize(textSize);
+        paint.setColor(Color.WHITE);
+        int cellWidth = (int)Math.ceil(paint.measureText("M"));
+        int cellHeight = (int)Math.ceil(paint.descent() - paint.ascent());
+
+        Bitmap bitmap = Bitmap.createBitmap(cellWidth * TextLayout.COLUMNS, cellHeight * TextLayout.ROWS, Bitmap.Config.ALPHA_8);
+        bitmap.eraseColor(Color.TRANSPARENT);
+        Canvas canvas = new Canvas(bitmap);
+        char[] glyph = new char[1];
+        for (char c = TextLayout.FIRST; c <= TextLayout.LAST; c++)
+        {
+            int cell = c - TextLayout.FIRST;
+            glyph[0] = c;
+            canvas.drawText(glyph, 0, 1, (cell % TextLayout.COLUMNS) * cellWidth,
+                    (cell / TextLayout.COLUMNS) * cellHeight - paint.ascent(), paint);
+        }
+
+        // Rows of a bitmap may be padded, the atlas's are not
+        int width = cellWidth * TextLayout.COLUMNS, height = cellHeight * TextLayout.ROWS;
+        int rowBytes = bitmap.getRowBytes();
+        ByteBuffer padded = ByteBuffer.allocateDirect(rowBytes * height);
+        bitmap.copyPixelsToBuffer(padded);
+        bitmap.recycle();
+        ByteBuffer pixels = ByteBuffer.allocateDirect(width * height);
+        for (int y = 0; y < height; y++)
+        {
+            padded.limit(y * rowBytes + width);
+            padded.position(y * rowBytes);
+            pixels.put(padded);
+        }
+        pixels.position(0);
+        return new GlyphAtlas(cellWidth, cellHeight, pixels);
+    }
+}
@@ -16,10 +16,8 @@
 
 package rd.vehicle;
 
-import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.util.UUID;
 
@@ -38,8 +36,9 @@ import android.util.Log;
  * connections with other devices. It has a thread that listens for
  * incoming connections, a thread for connecting with a device, and a
  * thread for performing data transmissions when connected.
+ * It is the RFCOMM implementation of VehicleLink.
  */
-public class BluetoothChatService {
+public class BluetoothChatService implements VehicleLink {
     // Debugging
     private static final String TAG = "BluetoothChatService";
     private static final boolean D = true;
@@ -51,6 +50,14 @@ public class BluetoothChatService {
     									 				
     private static final UUID MY_UUID = UUID.fromString("00001101-0000-1000-8000-00805F9B34FB");
 
+    // Where the last connected device is remembered
+    private static final String PREFS = "BluetoothChatService";
+    private static final String PREF_LAST_DEVICE = "last_device";
+
+    // Outgoing messages waiting for the writer thread
+    private static final int OUT_QUEUE_CAPACITY = 16;
+    private static final int MAX_MESSAGE_SIZE = 64;
+
     // Member fields
     private final BluetoothAdapter mAdapter;
     private final Handler mHandler;
@@ -59,15 +66,31 @@ public class BluetoothChatService {
     private ConnectedThread mConnectedThread;
     private int mState;
 
-    // Constants that indicate the current connection state
-    public static final int STATE_NONE = 0;       // we're doing nothing
-    public static final int STATE_LISTEN = 1;     // now listening for incoming connections
-    public static final int STATE_CONNECTING = 2; // now initiating an outgoing connection
-    public static final int STATE_CONNECTED = 3;  // now connected to a remote device
-    
+    private volatile Listener mListener;
+    private final OutboundQueue mOutQueue = new OutboundQueue(OUT_QUEUE_CAPACITY, MAX_MESSAGE_SIZE);
+    private final QueueWriter mWriter = new QueueWriter(mOutQueue);
+    private final Metrics.Counter mBytesRead = Metrics.get().counter("link.bytes.in");
+    private final Metrics.Counter mReconnectAttempts = Metrics.get().counter("link.reconnect.attempts");
+    private final Metrics.Timer mReconnectTime = Metrics.get().timer("link.reconnect");
+    private final LatencyProbe mLatencyProbe = new LatencyProbe(this);
+
+    // Automatic reconnection to the last device after the link drops
+    private final Context mContext;
+    private final ReconnectPolicy mReconnectPolicy = new ReconnectPolicy();
+    private final TimingStats mReconnectStats = new TimingStats();
+    private boolean mAutoReconnect = true;
+    private BluetoothDevice mLastDevice;
+    private long mLostAtNs = 0; // when the link dropped or the startup connect began, 0 if not reconnecting
+    private final Runnable mReconnect = new Runnable() {
+        public void run() {
+            reconnect();
+        }
+    };
+
+    // The STATE_ constants of the connection state come from VehicleLink
+
     public static final int MESSAGE_STATE_CHANGE = 1;
     public static final int MESSAGE_READ = 2;
-    public static final int MESSAGE_WRITE = 3;
     public static final int MESSAGE_DEVICE_NAME = 4;
     public static final int MESSAGE_TOAST = 5;
 
@@ -80,6 +103,12 @@ public class BluetoothChatService {
         mAdapter = BluetoothAdapter.getDefaultAdapter();
         mState = STATE_NONE;
         mHandler = handler;
+        mContext = context;
+        Metrics.get().gauge("link.queue", new Metrics.Gauge() {
+            public long value() {
+                return mOutQueue.getDepth();
+            }
+        });
     }
 
     /**
@@ -92,6 +121,8 @@ public class BluetoothChatService {
 
         // Give the new state to the Handler so the UI Activity can update
         mHandler.obtainMessage(MESSAGE_STATE_CHANGE, state, -1).sendToTarget();
+        Listener l = mListener;
+        if (l != null) l.onStateChanged(state);
     }
 
     /**
@@ -100,6 +131,14 @@ public class BluetoothChatService {
         return mState;
     }
 
+    /**
+     * Set the listener receiving state changes and incoming bytes on the
+     * service threads, in addition to the messages sent to the Handler.
+     */
+    public void setListener(Listener listener) {
+        mListener = listener;
+    }
+
     /**
      * Start the chat service. Specifically start AcceptThread to begin a
      * session in listening (server) mode. Called by the Activity onResume() */
@@ -120,6 +159,14 @@ public class BluetoothChatService {
         setState(STATE_LISTEN);
     }
 
+    /**
+     * Start the ConnectThread to initiate a connection to a remote device.
+     * @param address  The MAC address of the BluetoothDevice to connect
+     */
+    public void connect(String address) {
+        connect(mAdapter.getRemoteDevice(address));
+    }
+
     /**
      * Start the ConnectThread to initiate a connection to a remote device.
      * @param device  The BluetoothDevice to connect
@@ -127,6 +174,33 @@ public class BluetoothChatService {
     public synchronized void connect(BluetoothDevice device) {
         if (D) Log.d(TAG, "connect to: " + device);
 
+        // A connection requested from outside starts over
+        mHandler.removeCallbacks(mReconnect);
+        mReconnectPolicy.reset();
+        mLostAtNs = 0;
+        startConnect(device);
+    }
+
+    /**
+     * Connect to the last connected device, retrying with back-off as after
+     * a lost link, since the vehicle may be switched on after the app.
+     * @return false if no device was ever connected
+     */
+    public synchronized boolean connectLastDevice() {
+        String address = getLastDeviceAddress();
+        if (address == null || !BluetoothAdapter.checkBluetoothAddress(address)) return false;
+        if (D) Log.d(TAG, "connect to last device " + address);
+        mHandler.removeCallbacks(mReconnect);
+        mReconnectPolicy.reset();
+        mLostAtNs = System.nanoTime();
+        mAdapter.cancelDiscovery();
+        startConnect(mAdapter.getRemoteDevice(address));
+        return true;
+    }
+
+    private synchronized void startConnect(BluetoothDevice device) {
+        mLastDevice = device;
+
         // Cancel any thread attempting to make a connection
         if (mState == STATE_CONNECTING) {
             if (mConnectThread != null) {mConnectThread.cancel(); mConnectThread = null;}
@@ -159,12 +233,25 @@ public class BluetoothChatService {
         if (mAcceptThread != null) {mAcceptThread.cancel(); mAcceptThread = null;}
 
         // Start the thread to manage the connection and perform transmissions
+        mOutQueue.clear();
         mConnectedThread = new ConnectedThread(socket);
         mConnectedThread.start();
 
         // Send the name of the connected device back to the UI Activity
         mHandler.obtainMessage(MESSAGE_DEVICE_NAME,-1,-1,device.getName()).sendToTarget();
 
+        // Remember the device so it can be reconnected to directly
+        mLastDevice = device;
+        mContext.getSharedPreferences(PREFS, Context.MODE_PRIVATE).edit()
+                .putString(PREF_LAST_DEVICE, device.getAddress()).apply();
+        mReconnectPolicy.reset();
+        if (mLostAtNs != 0) {
+            long reconnectNs = System.nanoTime() - mLostAtNs;
+            mReconnectStats.record(reconnectNs);
+            mReconnectTime.record(reconnectNs);
+            mLostAtNs = 0;
+        }
+
         setState(STATE_CONNECTED);
     }
 
@@ -173,6 +260,8 @@ public class BluetoothChatService {
      */
     public synchronized void stop() {
         if (D) Log.d(TAG, "stop");
+        mHandler.removeCallbacks(mReconnect);
+        mLostAtNs = 0;
         if (mConnectThread != null) {mConnectThread.cancel(); mConnectThread = null;}
         if (mConnectedThread != null) {mConnectedThread.cancel(); mConnectedThread = null;}
         if (mAcceptThread != null) {mAcceptThread.cancel(); mAcceptThread = null;}
@@ -180,20 +269,115 @@ public class BluetoothChatService {
     }
 
     /**
-     * Write to the ConnectedThread in an unsynchronized manner
+     * Queue bytes for the writer thread of the ConnectedThread
      * @param out The bytes to write
-     * @see ConnectedThread#write(byte[])
+     * @see #write(byte[], int, int)
      */
     public void write(byte[] out) {
-        // Create temporary object
-        ConnectedThread r;
-        // Synchronize a copy of the ConnectedThread
-        synchronized (this) {
-            if (mState != STATE_CONNECTED) return;
-            r = mConnectedThread;
+        write(out, 0, out.length);
+    }
+
+    /**
+     * Queue part of a buffer for the writer thread of the ConnectedThread.
+     * Never blocks; the bytes are dropped if the queue is full.
+     * @param out The buffer holding the bytes to write
+     * @param offset The start of the bytes in the buffer
+     * @param length The number of bytes to write
+     */
+    public void write(byte[] out, int offset, int length) {
+        if (getState() != STATE_CONNECTED) return;
+        mOutQueue.offer(out, offset, length);
+    }
+
+    /**
+     * Queue a velocity command, replacing the previous one if that has not
+     * been written yet.
+     * @see #write(byte[], int, int)
+     */
+    public void writeLatest(byte[] out, int offset, int length, long originNs) {
+        if (getState() != STATE_CONNECTED) return;
+        mOutQueue.offerLatest(out, offset, length, originNs);
+    }
+
+    /**
+     * Queue a brake command ahead of everything else, dropping the pending
+     * velocity command.
+     * @see #write(byte[], int, int)
+     */
+    public void writeUrgent(byte[] out, int offset, int length, long originNs) {
+        if (getState() != STATE_CONNECTED) return;
+        mOutQueue.offerUrgent(out, offset, length, originNs);
+    }
+
+    /** Messages waiting for the writer thread */
+    public int getQueueDepth() {
+        return mOutQueue.getDepth();
+    }
+
+    /** Messages dropped because they were outdated or the queue was full */
+    public long getDroppedCommands() {
+        return mOutQueue.getDropped();
+    }
+
+    /** Time spent in each write to the socket */
+    public TimingStats getWriteStats() {
+        return mWriter.getWriteStats();
+    }
+
+    /**
+     * The probe measuring round trips over this link. It is fed with the
+     * ECHO frames read; call start() on it to begin pinging.
+     */
+    public LatencyProbe getLatencyProbe() {
+        return mLatencyProbe;
+    }
+
+    /**
+     * The MAC address of the last connected device, remembered across runs
+     * @return The address, or null if no device was ever connected
+     */
+    public String getLastDeviceAddress() {
+        return mContext.getSharedPreferences(PREFS, Context.MODE_PRIVATE)
+                .getString(PREF_LAST_DEVICE, null);
+    }
+
+    /**
+     * Enable or disable reconnecting to the last device when the link drops
+     */
+    public synchronized void setAutoReconnect(boolean autoReconnect) {
+        mAutoReconnect = autoReconnect;
+        if (!autoReconnect) {
+            mHandler.removeCallbacks(mReconnect);
+            mLostAtNs = 0;
         }
-        // Perform the write unsynchronized
-        r.write(out);
+    }
+
+    /**
+     * Time from losing the link, or from the startup connect to the last
+     * device, until it was connected again
+     */
+    public TimingStats getReconnectStats() {
+        return mReconnectStats;
+    }
+
+    /**
+     * Schedule the next attempt to reconnect to the last device
+     * @return false if not reconnecting
+     */
+    private synchronized boolean scheduleReconnect() {
+        if (!mAutoReconnect || mLastDevice == null || mLostAtNs == 0) return false;
+        long delay = mReconnectPolicy.nextDelayMs();
+        if (D) Log.d(TAG, "reconnect attempt " + mReconnectPolicy.getAttempts() + " in " + delay + "ms");
+        mHandler.postDelayed(mReconnect, delay);
+        mReconnectAttempts.increment();
+        return true;
+    }
+
+    private synchronized void reconnect() {
+        if (mLostAtNs == 0 || mState == STATE_CONNECTED || mState == STATE_CONNECTING) return;
+        // Discovery slows down the connection a lot
+        mAdapter.cancelDiscovery();
+        startConnect(mLastDevice);
     }
 
     /**
@@ -201,6 +385,7 @@ public class BluetoothChatService {
      */
     private void connectionFailed() {
         setState(STATE_LISTEN);
+        if (scheduleReconnect()) return;
 
         // Send a failure message back to the Activity
         mHandler.obtainMessage(MESSAGE_TOAST,-1,-1,"Unable to connect device").sendToTarget();
@@ -211,6 +396,10 @@ public class BluetoothChatService {
      */
     private void connectionLost() {
         setState(STATE_LISTEN);
+        synchronized (this) {
+            mLostAtNs = System.nanoTime();
+        }
+        scheduleReconnect();
 
         // Send a failure message back to the Activity
         mHandler.obtainMessage(MESSAGE_TOAST,-1,-1, "Device connection was lost").sendToTarget();
@@ -325,13 +514,17 @@ public class BluetoothChatService {
                 // successful connection or an exception
                 mmSocket.connect();
             } catch (IOException e) {
-                connectionFailed();
                 // Close the socket
                 try {
                     mmSocket.close();
                 } catch (IOException e2) {
                     Log.e(TAG, "unable to close() socket during connection failure", e2);
                 }
+                // Nothing failed if the attempt was cancelled on purpose
+                synchronized (BluetoothChatService.this) {
+                    if (mConnectThread != this) return;
+                }
+                connectionFailed();
                 // Start the service over to restart listening mode
                 BluetoothChatService.this.start();
                 return;
@@ -357,12 +550,14 @@ public class BluetoothChatService {
 
     /**
      * This thread runs during a connection with a remote device.
-     * It handles all incoming and outgoing transmissions.
+     * It handles all incoming transmissions, and owns a writer thread
+     * draining the outgoing queue so no caller blocks on the socket.
      */
     private class ConnectedThread extends Thread {
         private final BluetoothSocket mmSocket;
         private final InputStream mmInStream;
         private final OutputStream mmOutStream;
+        private final Thread mmWriteThread;
 
         public ConnectedThread(BluetoothSocket socket) {
             Log.d(TAG, "create ConnectedThread");
@@ -380,31 +575,52 @@ public class BluetoothChatService {
 
             mmInStream = tmpIn;
             mmOutStream = tmpOut;
+            mmWriteThread = new Thread(new Runnable() {
+                public void run() {
+                    writeLoop();
+                }
+            }, "WriteThread");
+            mmWriteThread.start();
         }
 
         public void run() {
             Log.i(TAG, "BEGIN mConnectedThread");
-            BufferedReader buffer = new BufferedReader(new InputStreamReader(mmInStream));
+            setName("ConnectedThread");
+            byte[] buffer = new byte[1024];
             int bytes;
+            FrameDecoder decoder = new FrameDecoder(new FrameDecoder.Listener() {
+                public void onFrame(int type, int seq, byte[] buf, int payloadOffset, int payloadLength) {
+                    if (type == Protocol.TYPE_ECHO) {
+                        mLatencyProbe.onFrame(type, seq, buf, payloadOffset, payloadLength);
+                        return;
+                    }
+                    if (type != Protocol.TYPE_TELEMETRY) return;
+                    // Send the parsed record to the UI Activity, which recycles it
+                    Telemetry t = Telemetry.obtain();
+                    t.parse(seq, buf, payloadOffset);
+                    t.receivedNs = System.nanoTime();
+                    mHandler.obtainMessage(MESSAGE_READ, t).sendToTarget();
+                }
+            });
 
             // Keep listening to the InputStream while connected
             while (true) {
                 try {
-                	char[] buf = new char[16];
-                	int t;
-//                	String line;
                     // Read from the InputStream
-//                	while((line = buffer.readLine())!=null){
-                	while((t = buffer.read(buf)) > 0){
-                        // Send the obtained bytes to the UI Activity
-//                        mHandler.obtainMessage(MESSAGE_READ, line.length(), -1, line)
-//                                .sendToTarget();
-                      mHandler.obtainMessage(MESSAGE_READ, t, -1, buf)
-                      .sendToTarget();
-                		
-                	}
+                    bytes = mmInStream.read(buffer);
+                    if (bytes < 0) throw new IOException("end of stream");
+                    mBytesRead.add(bytes);
+
+                    Listener l = mListener;
+                    if (l != null) l.onRead(buffer, 0, bytes);
+
+                    decoder.feed(buffer, 0, bytes);
                 } catch (IOException e) {
                     Log.e(TAG, "disconnected", e);
+                    // Nothing is lost if the connection was cancelled on purpose
+                    synchronized (BluetoothChatService.this) {
+                        if (mConnectedThread != this) break;
+                    }
                     connectionLost();
                     break;
                 }
@@ -412,22 +628,21 @@ public class BluetoothChatService {
         }
 
         /**
-         * Write to the connected OutStream.
-         * @param buffer  The bytes to write
+         * Write queued messages to the connected OutStream until cancelled.
          */
-        public void write(byte[] buffer) {
+        private void writeLoop() {
             try {
-                mmOutStream.write(buffer);
-
-                // Share the sent message back to the UI Activity
-                mHandler.obtainMessage(MESSAGE_WRITE, -1, -1, buffer)
-                        .sendToTarget();
+                mWriter.run(mmOutStream);
+            } catch (InterruptedException e) {
+                // cancelled
             } catch (IOException e) {
+                // The read loop notices the lost connection
                 Log.e(TAG, "Exception during write", e);
             }
         }
 
         public void cancel() {
+            mmWriteThread.interrupt();
             try {
                 mmSocket.close();
             } catch (IOException e) {
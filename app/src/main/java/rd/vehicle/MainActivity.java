@@ -5,7 +5,7 @@ import android.bluetooth.BluetoothAdapter;
 import android.bluetooth.BluetoothDevice;
 import android.content.Context;
 import android.content.Intent;
-import android.opengl.GLSurfaceView;
+import android.os.Build;
 import android.os.Handler;
 import android.os.Message;
 import android.support.v7.app.AppCompatActivity;
@@ -15,22 +15,30 @@ import android.view.Menu;
 import android.view.MenuItem;
 import android.widget.Toast;
 
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+
 class MyHandler extends Handler
 {
     public Context context;
+    public MyGLSurfaceView view;
 
     @Override
     public void handleMessage(Message msg) {
         switch (msg.what) {
             case BluetoothChatService.MESSAGE_STATE_CHANGE:
-                Log.i("handleMessage", "MESSAGE_STATE_CHANGE: " + msg.arg1);
+                Tracer.event(TraceEvent.LINK_STATE, msg.arg1);
+                // The readouts show the state
+                if (view != null) view.requestRender();
                 break;
             case BluetoothChatService.MESSAGE_READ:
-                String textRead = String.valueOf((char[])msg.obj, 0, msg.arg1);
-                Log.i("handleMessage", "MESSAGE_READ: " + textRead);
-                break;
-            case BluetoothChatService.MESSAGE_WRITE:
-                Log.i("handleMessage", "MESSAGE_READ");
+                Telemetry t = (Telemetry)msg.obj;
+                Tracer.event(TraceEvent.TELEMETRY_READ, t.seq, (int)((System.nanoTime() - t.receivedNs) / 1000));
+                if (view != null) view.onTelemetry(t);
+                t.recycle();
                 break;
             case BluetoothChatService.MESSAGE_TOAST:
                 Toast.makeText(context,(String) msg.obj, Toast.LENGTH_SHORT).show();
@@ -45,6 +53,8 @@ public class MainActivity extends AppCompatActivity
     private final static int REQUEST_LIST_BT = 101;
 
     private BluetoothChatService mChatService;
+    private RecordingVehicleLink mLink;
+    private MyGLSurfaceView mGLView;
 
     @Override
     protected void onActivityResult(int requestCode, int resultCode, Intent data)
@@ -70,6 +80,8 @@ public class MainActivity extends AppCompatActivity
                     Log.e("bluetooth", "failed to enable bluetooth");
                     return;
                 }
+                // Skip the device list and its discovery if we know the vehicle
+                if (mChatService.connectLastDevice()) return;
                 Intent intent = new Intent(MainActivity.this, DeviceListActivity.class);
                 startActivityForResult(intent, REQUEST_LIST_BT);
                 break;
@@ -85,8 +97,11 @@ public class MainActivity extends AppCompatActivity
         MyHandler mHandler = new MyHandler();
         mHandler.context = getApplicationContext();
         mChatService = new BluetoothChatService(this, mHandler);
-        GLSurfaceView mGLView = new MyGLSurfaceView(this, mChatService);
+        mLink = new RecordingVehicleLink(mChatService);
+        mGLView = new MyGLSurfaceView(this, mLink);
         setContentView(mGLView);
+        mHandler.view = mGLView;
+        mChatService.getLatencyProbe().setSeries(mGLView.getRenderer().getTelemetry().rtt);
 
         BluetoothAdapter mBluetoothAdapter = BluetoothAdapter.getDefaultAdapter();
         if (mBluetoothAdapter == null)
@@ -102,6 +117,136 @@ public class MainActivity extends AppCompatActivity
             onActivityResult(REQUEST_ENABLE_BT, RESULT_OK, null);
     }
 
+    @Override
+    protected void onResume()
+    {
+        super.onResume();
+        mGLView.onResume();
+    }
+
+    @Override
+    protected void onPause()
+    {
+        super.onPause();
+        // Only the drawing pauses; the controls and the link stay as they are
+        mGLView.onPause();
+    }
+
+    @Override
+    protected void onDestroy()
+    {
+        // A recreated activity starts its own; these would keep sending next to them.
+        // The loop goes first, as it restarts the scheduler when it sets a command.
+        mGLView.getControlLoop().stop();
+        mGLView.mMovement.getScheduler().stop();
+        mChatService.getLatencyProbe().stop();
+        mChatService.stop();
+        stopRecording();
+        super.onDestroy();
+    }
+
+    /**
+     * Record the commands and telemetry of the session to the app's external
+     * files, for rd.vehicle.SessionReplay on a computer
+     */
+    private boolean startRecording()
+    {
+        File file = new File(getExternalFilesDir(null), "session-" + System.currentTimeMillis() + ".bin");
+        try
+        {
+            mLink.setRecorder(new SessionRecorder(file));
+            Log.i("session", "recording to " + file);
+            return true;
+        } catch (IOException e)
+        {
+            Log.e("session", "failed to record", e);
+            return false;
+        }
+    }
+
+    private void stopRecording()
+    {
+        SessionRecorder recorder = mLink.getRecorder();
+        if (recorder == null) return;
+        mLink.setRecorder(null);
+        try
+        {
+            recorder.close();
+            Toast.makeText(this, recorder.getRecorded() + " records saved", Toast.LENGTH_LONG).show();
+        } catch (IOException e)
+        {
+            Log.e("session", "failed to close the recording", e);
+        }
+    }
+
+    /**
+     * Save the round trip histogram of this session to the app's external files
+     */
+    private void exportLatency()
+    {
+        LatencyHistogram histogram = mChatService.getLatencyProbe().getHistogram();
+        File file = new File(getExternalFilesDir(null), "latency-" + System.currentTimeMillis() + ".csv");
+        try
+        {
+            PrintWriter out = new PrintWriter(new FileWriter(file));
+            histogram.export(out);
+            out.close();
+            Toast.makeText(this, histogram.toString(), Toast.LENGTH_LONG).show();
+            Log.i("latency", "exported to " + file);
+        } catch (IOException e)
+        {
+            Log.e("latency", "failed to export", e);
+        }
+    }
+
+    /**
+     * Save the metrics as they are now to the app's external files, headed
+     * by the phone and build they were taken on
+     */
+    private void exportMetrics()
+    {
+        File file = new File(getExternalFilesDir(null), "metrics-" + System.currentTimeMillis() + ".csv");
+        try
+        {
+            PrintWriter out = new PrintWriter(new FileWriter(file));
+            out.println("# " + Build.MANUFACTURER + " " + Build.MODEL + ", Android " + Build.VERSION.RELEASE
+                    + ", build " + BuildConfig.VERSION_NAME + " " + BuildConfig.BUILD_TYPE);
+            Metrics.get().export(out);
+            out.close();
+            Toast.makeText(this, "Metrics saved to " + file.getName(), Toast.LENGTH_LONG).show();
+            Log.i("metrics", "exported to " + file);
+        } catch (IOException e)
+        {
+            Log.e("metrics", "failed to export", e);
+        }
+    }
+
+    /**
+     * Save the recent trace events to the app's external files, for
+     * rd.vehicle.TraceDecoder on a computer
+     */
+    private void dumpTrace()
+    {
+        Tracer tracer = Tracer.get();
+        File file = new File(getExternalFilesDir(null), "trace-" + System.currentTimeMillis() + ".bin");
+        try
+        {
+            FileOutputStream out = new FileOutputStream(file);
+            try
+            {
+                tracer.dump(out);
+            } finally
+            {
+                out.close();
+            }
+            Toast.makeText(this, "Trace saved to " + file.getName(), Toast.LENGTH_LONG).show();
+            Log.i("trace", "dumped to " + file);
+        } catch (IOException e)
+        {
+            Log.e("trace", "failed to dump", e);
+        }
+    }
+
     @Override
     public boolean onCreateOptionsMenu(Menu menu)
     {
@@ -118,6 +263,69 @@ public class MainActivity extends AppCompatActivity
         // as you specify a parent activity in AndroidManifest.xml.
         int id = item.getItemId();
 
+        if (id == R.id.action_choose_device)
+        {
+            // The remembered device may not be the one wanted
+            Intent intent = new Intent(MainActivity.this, DeviceListActivity.class);
+            startActivityForResult(intent, REQUEST_LIST_BT);
+            return true;
+        }
+
+        if (id == R.id.action_binary_protocol)
+        {
+            // New firmware parses the binary frame, old one only the text format
+            item.setChecked(!item.isChecked());
+            mGLView.mMovement.setEncoder(item.isChecked() ? new BinaryCommandEncoder() : new LegacyCommandEncoder());
+            // Only new firmware answers pings
+            if (item.isChecked())
+                mChatService.getLatencyProbe().start(LatencyProbe.DEFAULT_PERIOD_MS);
+            else
+                mChatService.getLatencyProbe().stop();
+            return true;
+        }
+
+        if (id == R.id.action_telemetry_hud)
+        {
+            item.setChecked(!item.isChecked());
+            mGLView.setHudVisible(item.isChecked());
+            return true;
+        }
+
+        if (id == R.id.action_metrics_overlay)
+        {
+            item.setChecked(!item.isChecked());
+            mGLView.setMetricsVisible(item.isChecked());
+            return true;
+        }
+
+        if (id == R.id.action_export_metrics)
+        {
+            exportMetrics();
+            return true;
+        }
+
+        if (id == R.id.action_record_session)
+        {
+            if (item.isChecked())
+                stopRecording();
+            else if (!startRecording())
+                return true;
+            item.setChecked(!item.isChecked());
+            return true;
+        }
+
+        if (id == R.id.action_export_latency)
+        {
+            exportLatency();
+            return true;
+        }
+
+        if (id == R.id.action_dump_trace)
+        {
+            dumpTrace();
+            return true;
+        }
+
         //noinspection SimplifiableIfStatement
         if (id == R.id.action_settings)
         {
@@ -0,0 +1,52 @@
+package rd.vehicle;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.nio.ByteBuffer;
+
+/**
+ * One drive command into a frame, in the text format of the old firmware
+ * and in binary. The speeds change between calls like they do while
+ * driving, so the text encoder formats numbers of every length.
+ */
+@State(Scope.Thread)
+public class CommandEncodingBenchmark
+{
+    private final CommandEncoder legacy = new LegacyCommandEncoder();
+    private final CommandEncoder binary = new BinaryCommandEncoder();
+    private final ByteBuffer out = ByteBuffer.allocate(Math.max(legacy.maxFrameSize(), binary.maxFrameSize()));
+    private final int[] speeds = new int[256];
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp()
+    {
+        // -2000 to 2000 mm/s, the range of the speed mark
+        for (int i = 0; i < speeds.length; i++)
+            speeds[i] = (int)(2000 * Math.sin(i * 2 * Math.PI / speeds.length));
+    }
+
+    private int encode(CommandEncoder encoder)
+    {
+        int i = next = (next + 1) & (speeds.length - 1);
+        out.clear();
+        encoder.encode(out, speeds[i], -speeds[i], i & 1);
+        return out.position();
+    }
+
+    @Benchmark
+    public int legacy()
+    {
+        return encode(legacy);
+    }
+
+    @Benchmark
+    public int binary()
+    {
+        return encode(binary);
+    }
+}
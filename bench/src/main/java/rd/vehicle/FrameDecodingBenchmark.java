@@ -0,0 +1,78 @@
+package rd.vehicle;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+
+/**
+ * Telemetry frames through FrameDecoder and Telemetry.parse, fed whole and
+ * in chunks of random size the way they come off the socket. Scores are
+ * per frame.
+ */
+@State(Scope.Thread)
+public class FrameDecodingBenchmark
+{
+    private static final int FRAMES = 256;
+    private static final int FRAME_LENGTH = Protocol.OVERHEAD + Protocol.TELEMETRY_PAYLOAD;
+
+    private final byte[] stream = new byte[FRAMES * FRAME_LENGTH];
+    private final int[] chunks = new int[FRAMES];
+    private final Telemetry t = new Telemetry();
+    private long received;
+    private FrameDecoder decoder;
+
+    @Setup(Level.Trial)
+    public void setUp()
+    {
+        for (int i = 0; i < FRAMES; i++)
+        {
+            int p = i * FRAME_LENGTH;
+            stream[p] = Protocol.SYNC;
+            stream[p+1] = Protocol.TYPE_TELEMETRY;
+            stream[p+2] = (byte)i;
+            stream[p+3] = (byte)(i >> 8);
+            stream[p+4] = (byte)i;
+            stream[p+5] = (byte)(i >> 4);
+            stream[p+6] = (byte)i;
+            stream[p+7] = 0x2e;
+            stream[p+8] = (byte)0xe0;
+            stream[p+9] = Protocol.crc8(stream, p+1, FRAME_LENGTH-2);
+        }
+        Random random = new Random(0);
+        for (int i = 0; i < chunks.length; i++) chunks[i] = 1 + random.nextInt(64);
+
+        decoder = new FrameDecoder(new FrameDecoder.Listener() {
+            @Override
+            public void onFrame(int type, int seq, byte[] buffer, int payloadOffset, int payloadLength) {
+                t.parse(seq, buffer, payloadOffset);
+                received++;
+            }
+        });
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(FRAMES)
+    public long whole()
+    {
+        decoder.feed(stream, 0, stream.length);
+        return received;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(FRAMES)
+    public long chunked()
+    {
+        for (int pos = 0, c = 0; pos < stream.length; c++)
+        {
+            int n = Math.min(chunks[c], stream.length - pos);
+            decoder.feed(stream, pos, n);
+            pos += n;
+        }
+        return received;
+    }
+}
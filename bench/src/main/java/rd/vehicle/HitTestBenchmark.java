@@ -0,0 +1,77 @@
+package rd.vehicle;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Touches against the figures of the control screen: the hit test of one
+ * point against every figure, and a whole gesture routed to the controls
+ * and sampled like MyGLSurfaceView does for each MotionEvent.
+ */
+@State(Scope.Thread)
+public class HitTestBenchmark
+{
+    private static final int POINTS = 64;
+
+    private final ControlScene scene = new ControlScene(new RecordingGl(), GlyphAtlas.BLANK);
+    private final Viewport vp = new Viewport(1280, 720);
+    private final ControlSampleQueue samples = new ControlSampleQueue(256, ControlLoop.CHANNELS);
+    private final TouchRouter router = new TouchRouter(samples);
+    private final float[] xs = new float[POINTS], ys = new float[POINTS];
+    private final float[] sample = new float[ControlLoop.CHANNELS];
+    private float speedX, speedY;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp()
+    {
+        router.setControls(scene.figCtrls);
+        // Points all over the screen, most of them missing every figure
+        for (int i = 0; i < POINTS; i++)
+        {
+            xs[i] = (i * 37 % POINTS) * vp.width / (float)POINTS;
+            ys[i] = (i * 11 % POINTS) * vp.height / (float)POINTS;
+        }
+        float[] origin = new float[2];
+        scene.figs[ControlScene.CTRL_MOVE].origin(origin);
+        speedX = vp.fromNdcX(origin[0]);
+        speedY = vp.height - vp.fromNdcYUp(origin[1]);
+    }
+
+    @Benchmark
+    public int validTouch()
+    {
+        int i = next = (next + 1) & (POINTS - 1);
+        int hits = 0;
+        for (Figure fig : scene.figs)
+            if (fig.validTouch(xs[i], ys[i], vp)) hits++;
+        return hits;
+    }
+
+    /** Grab the speed mark, drag it, let go */
+    @Benchmark
+    public int gesture()
+    {
+        long timeNs = 0;
+        router.down(0, speedX, speedY, vp);
+        router.sample(timeNs++);
+        for (int i = 1; i <= 8; i++)
+        {
+            router.move(0, speedX + i, speedY, vp);
+            router.sample(timeNs++);
+        }
+        for (int i = 7; i >= 0; i--)
+        {
+            router.move(0, speedX + i, speedY, vp);
+            router.sample(timeNs++);
+        }
+        router.up(0);
+        router.sample(timeNs);
+        int n = 0;
+        while (samples.poll(sample) >= 0) n++;
+        return n;
+    }
+}
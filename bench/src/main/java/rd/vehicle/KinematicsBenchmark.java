@@ -0,0 +1,76 @@
+package rd.vehicle;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * From control values to a drive command: the wheel speeds alone, and a
+ * tick of the ControlLoop that drains a touch's samples into Movement and
+ * encodes the result for a link that drops it.
+ */
+@State(Scope.Thread)
+public class KinematicsBenchmark
+{
+    /** Takes every frame and sends nothing */
+    private static class NullLink implements VehicleLink
+    {
+        @Override public void setListener(Listener listener) {}
+        @Override public void connect(String address) {}
+        @Override public void stop() {}
+        @Override public int getState() { return STATE_CONNECTED; }
+        @Override public void write(byte[] buffer, int offset, int length) {}
+        @Override public void writeLatest(byte[] buffer, int offset, int length, long originNs) {}
+        @Override public void writeUrgent(byte[] buffer, int offset, int length, long originNs) {}
+    }
+
+    // Samples a 120 Hz touch screen delivers between two 50 Hz ticks, and then some
+    private static final int SAMPLES_PER_TICK = 4;
+
+    private final float[] sample = new float[ControlLoop.CHANNELS];
+    private ControlSampleQueue samples;
+    private Movement movement;
+    private ControlLoop loop;
+    private long timeNs;
+    private float v;
+
+    @Setup(Level.Trial)
+    public void setUp()
+    {
+        movement = new Movement(new NullLink());
+        movement.setEncoder(new BinaryCommandEncoder());
+        samples = new ControlSampleQueue(64, ControlLoop.CHANNELS);
+        loop = new ControlLoop(samples, movement);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown()
+    {
+        movement.getScheduler().stop();
+    }
+
+    @Benchmark
+    public DriveCommand wheelSpeeds()
+    {
+        v = v > 2.0f ? -2.0f : v + 0.01f;
+        return Movement.toCommand(v, -v, 0, timeNs++);
+    }
+
+    @Benchmark
+    public DriveCommand controlTick()
+    {
+        for (int i = 0; i < SAMPLES_PER_TICK; i++)
+        {
+            v = v > 2.0f ? -2.0f : v + 0.01f;
+            sample[ControlLoop.CHANNEL_SPIN] = -v;
+            sample[ControlLoop.CHANNEL_MOVE] = v;
+            sample[ControlLoop.CHANNEL_BRAKE] = 0;
+            samples.put(timeNs++, sample);
+        }
+        loop.tick();
+        return movement.getCommand();
+    }
+}
@@ -0,0 +1,45 @@
+package rd.vehicle;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * What recording adds to sending a command: one binary drive frame
+ * appended to the session file, as RecordingVehicleLink does on every
+ * write. Includes mapping the next segment each time one fills up.
+ */
+@State(Scope.Thread)
+public class SessionRecorderBenchmark
+{
+    private final byte[] frame = new byte[new BinaryCommandEncoder().maxFrameSize()];
+    private File file;
+    private SessionRecorder recorder;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException
+    {
+        file = File.createTempFile("session", ".bin");
+        recorder = new SessionRecorder(file);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException
+    {
+        recorder.close();
+        file.delete();
+    }
+
+    @Benchmark
+    public void recordCommand() throws IOException
+    {
+        frame[0]++;
+        recorder.record(SessionRecorder.LATEST, frame, 0, frame.length);
+    }
+}
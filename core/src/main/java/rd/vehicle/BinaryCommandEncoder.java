@@ -0,0 +1,33 @@
+package rd.vehicle;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Fixed size binary drive frame, see {@link Protocol}.
+ */
+public class BinaryCommandEncoder implements CommandEncoder
+{
+    public static final int FRAME_SIZE = Protocol.OVERHEAD + Protocol.DRIVE_PAYLOAD;
+
+    private int seq = 0;
+
+    @Override
+    public int maxFrameSize()
+    {
+        return FRAME_SIZE;
+    }
+
+    @Override
+    public void encode(ByteBuffer out, int vLeft, int vRight, int brk)
+    {
+        int start = out.position();
+        out.put(Protocol.SYNC);
+        out.put(Protocol.TYPE_DRIVE);
+        out.put((byte)seq);
+        out.putShort(Protocol.toInt16(vLeft));
+        out.putShort(Protocol.toInt16(vRight));
+        out.put((byte)(brk != 0 ? Protocol.FLAG_BRAKE : 0));
+        out.put(Protocol.crc8(out.array(), out.arrayOffset() + start + 1, FRAME_SIZE - 2));
+        seq = (seq + 1) & 0xff;
+    }
+}
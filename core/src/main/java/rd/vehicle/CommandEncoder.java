@@ -0,0 +1,21 @@
+package rd.vehicle;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Serializes a drive command into bytes for the vehicle. Implementations
+ * write into the caller's buffer and must not allocate.
+ */
+public interface CommandEncoder
+{
+    /** Largest number of bytes a single encode() may produce */
+    int maxFrameSize();
+
+    /**
+     * Append one command frame at the buffer's position.
+     * @param vLeft  Left wheel speed in mm/s
+     * @param vRight  Right wheel speed in mm/s
+     * @param brk  Non-zero to brake
+     */
+    void encode(ByteBuffer out, int vLeft, int vRight, int brk);
+}
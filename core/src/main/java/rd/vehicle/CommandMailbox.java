@@ -0,0 +1,23 @@
+package rd.vehicle;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Latest-wins handoff of DriveCommands from the UI thread to the sender
+ * thread. Publishing replaces whatever was there; taking never blocks and
+ * always returns a whole command.
+ */
+public class CommandMailbox
+{
+    private final AtomicReference<DriveCommand> mLatest = new AtomicReference<DriveCommand>(DriveCommand.STOP);
+
+    public void publish(DriveCommand command)
+    {
+        mLatest.set(command);
+    }
+
+    public DriveCommand latest()
+    {
+        return mLatest.get();
+    }
+}
@@ -0,0 +1,151 @@
+package rd.vehicle;
+
+/**
+ * Decides when a command goes out to the vehicle. A change is sent right
+ * away unless the last send was less than the rate limit ago, in which case
+ * it goes out as soon as the limit allows. While nothing changes the last
+ * command is repeated every heartbeat period so the vehicle can tell the
+ * link is still alive. The intervals between sends also go to Metrics.
+ */
+public class CommandScheduler
+{
+    public static final long DEFAULT_RATE_LIMIT_MS = 20; // 50 Hz
+    public static final long DEFAULT_HEARTBEAT_MS = 500;
+
+    private final Runnable mSend;
+    private final TimingStats mIntervals = new TimingStats();
+    private final TimingStats mHeartbeats = new TimingStats();
+    private final Metrics.Timer mIntervalTime = Metrics.get().timer("commands.interval");
+    private final Metrics.Timer mHeartbeatTime = Metrics.get().timer("commands.heartbeat");
+
+    private long minIntervalNs, heartbeatNs;
+    private long lastSendNs;
+    private boolean changed = false;
+    private boolean heartbeat = false; // whether the send awaitDue() returned for is one
+    private Thread mThread = null;
+
+    public CommandScheduler(Runnable send)
+    {
+        this(send, DEFAULT_RATE_LIMIT_MS, DEFAULT_HEARTBEAT_MS);
+    }
+
+    /**
+     * @param send  Called on the scheduler thread whenever a command is due
+     * @param rateLimitMs  Minimal interval between two sends
+     * @param heartbeatMs  Interval of keep-alive sends while idle
+     */
+    public CommandScheduler(Runnable send, long rateLimitMs, long heartbeatMs)
+    {
+        mSend = send;
+        setRateLimit(rateLimitMs);
+        setHeartbeat(heartbeatMs);
+    }
+
+    public synchronized void setRateLimit(long ms)
+    {
+        minIntervalNs = ms * 1000000L;
+        notifyAll();
+    }
+
+    public synchronized void setHeartbeat(long ms)
+    {
+        heartbeatNs = ms * 1000000L;
+        notifyAll();
+    }
+
+    /** Intervals before the sends of a change. Their deviation is the send jitter */
+    public TimingStats getIntervalStats()
+    {
+        return mIntervals;
+    }
+
+    /** Intervals before the heartbeat sends */
+    public TimingStats getHeartbeatStats()
+    {
+        return mHeartbeats;
+    }
+
+    public synchronized boolean isRunning()
+    {
+        return mThread != null;
+    }
+
+    public synchronized void start()
+    {
+        if (mThread != null) return;
+        mThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                loop();
+            }
+        }, "CommandScheduler");
+        mThread.setDaemon(true);
+        mThread.start();
+    }
+
+    public synchronized void stop()
+    {
+        if (mThread == null) return;
+        mThread.interrupt();
+        mThread = null;
+    }
+
+    /** Tell the scheduler the command has changed and should be sent soon */
+    public synchronized void notifyChanged()
+    {
+        changed = true;
+        notifyAll();
+    }
+
+    private synchronized boolean awaitDue(Thread self) throws InterruptedException
+    {
+        while (mThread == self)
+        {
+            long sinceLast = System.nanoTime() - lastSendNs;
+            long waitNs;
+            if (changed)
+            {
+                if (sinceLast >= minIntervalNs) break;
+                waitNs = minIntervalNs - sinceLast;
+            } else
+            {
+                if (sinceLast >= heartbeatNs) break;
+                waitNs = heartbeatNs - sinceLast;
+            }
+            wait(waitNs / 1000000L, (int)(waitNs % 1000000L));
+        }
+        heartbeat = !changed;
+        changed = false;
+        return mThread == self;
+    }
+
+    private void loop()
+    {
+        Thread self = Thread.currentThread();
+        lastSendNs = System.nanoTime() - heartbeatNs;
+        long prevNs = 0;
+        try {
+            while (awaitDue(self))
+            {
+                long now = System.nanoTime();
+                if (prevNs != 0)
+                {
+                    if (heartbeat)
+                    {
+                        mHeartbeats.record(now - prevNs);
+                        mHeartbeatTime.record(now - prevNs);
+                    } else
+                    {
+                        mIntervals.record(now - prevNs);
+                        mIntervalTime.record(now - prevNs);
+                    }
+                }
+                prevNs = now;
+                lastSendNs = now;
+                mSend.run();
+            }
+        } catch (InterruptedException e) {
+            // stopped
+        }
+    }
+}
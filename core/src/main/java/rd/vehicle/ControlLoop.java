@@ -0,0 +1,159 @@
+package rd.vehicle;
+
+/**
+ * Turns the control samples recorded by the UI thread into drive commands
+ * at a fixed rate, on its own thread, so the command rate no longer
+ * depends on how often touch events arrive. Each tick drains the
+ * ControlSampleQueue and passes the latest values to Movement, which
+ * applies the kinematics and hands the command to the link. Brake presses
+ * and releases in between are passed on too, in order, so a short tap is
+ * not lost; wakeUp() runs a tick right away for them.
+ */
+public class ControlLoop
+{
+    // Layout of a sample, the order of ControlScene.figCtrls
+    public static final int CHANNEL_SPIN = 0, CHANNEL_MOVE = 1, CHANNEL_BRAKE = 2, CHANNELS = 3;
+
+    public static final long DEFAULT_PERIOD_MS = 20; // 50 Hz
+
+    private final ControlSampleQueue mSamples;
+    private final Movement mMovement;
+    private final TimingStats mIntervals = new TimingStats();
+    private final float[] sample = new float[CHANNELS];
+
+    private long periodNs;
+    private boolean woken = false;
+    private Thread mThread = null;
+
+    // Only touched by the loop thread
+    private long lastTimeNs = -1;
+    private float lastBrake = 0;
+
+    public ControlLoop(ControlSampleQueue samples, Movement movement)
+    {
+        this(samples, movement, DEFAULT_PERIOD_MS);
+    }
+
+    /**
+     * @param samples  Filled by the UI thread, CHANNELS values each
+     * @param periodMs  Interval between two ticks
+     */
+    public ControlLoop(ControlSampleQueue samples, Movement movement, long periodMs)
+    {
+        if (samples.channels() != CHANNELS)
+            throw new IllegalArgumentException(samples.channels() + " channels, expected " + CHANNELS);
+        mSamples = samples;
+        mMovement = movement;
+        setPeriod(periodMs);
+    }
+
+    public synchronized void setPeriod(long ms)
+    {
+        periodNs = ms * 1000000L;
+        notifyAll();
+    }
+
+    /** Intervals between consecutive ticks */
+    public TimingStats getIntervalStats()
+    {
+        return mIntervals;
+    }
+
+    public synchronized boolean isRunning()
+    {
+        return mThread != null;
+    }
+
+    public synchronized void start()
+    {
+        if (mThread != null) return;
+        mThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                loop();
+            }
+        }, "ControlLoop");
+        mThread.setDaemon(true);
+        mThread.start();
+    }
+
+    public synchronized void stop()
+    {
+        if (mThread == null) return;
+        mThread.interrupt();
+        mThread = null;
+    }
+
+    /** Run the next tick now instead of at the end of the period */
+    public synchronized void wakeUp()
+    {
+        woken = true;
+        notifyAll();
+    }
+
+    private synchronized boolean awaitTick(Thread self, long nextNs) throws InterruptedException
+    {
+        while (mThread == self && !woken)
+        {
+            long waitNs = nextNs - System.nanoTime();
+            if (waitNs <= 0) break;
+            wait(waitNs / 1000000L, (int)(waitNs % 1000000L));
+        }
+        woken = false;
+        return mThread == self;
+    }
+
+    private synchronized long getPeriodNs()
+    {
+        return periodNs;
+    }
+
+    /**
+     * Pass the samples recorded since the last tick to Movement
+     * @return Whether there were any
+     */
+    boolean tick()
+    {
+        long timeNs;
+        boolean any = false, pending = false;
+        while ((timeNs = mSamples.poll(sample)) != -1)
+        {
+            any = pending = true;
+            lastTimeNs = timeNs;
+            if (sample[CHANNEL_BRAKE] != lastBrake)
+            {
+                // Every brake edge is a command of its own
+                lastBrake = sample[CHANNEL_BRAKE];
+                publish(timeNs);
+                pending = false;
+            }
+        }
+        if (pending) publish(lastTimeNs);
+        return any;
+    }
+
+    private void publish(long timeNs)
+    {
+        mMovement.setRequire(sample[CHANNEL_MOVE], sample[CHANNEL_SPIN], sample[CHANNEL_BRAKE], timeNs);
+    }
+
+    private void loop()
+    {
+        Thread self = Thread.currentThread();
+        long next = System.nanoTime(), prevNs = 0;
+        try {
+            while (awaitTick(self, next))
+            {
+                long now = System.nanoTime();
+                if (prevNs != 0) mIntervals.record(now - prevNs);
+                prevNs = now;
+                tick();
+                // Keep the phase of the fixed rate unless we fell behind or were woken early
+                next += getPeriodNs();
+                if (next < now || next > now + getPeriodNs()) next = now + getPeriodNs();
+            }
+        } catch (InterruptedException e) {
+            // stopped
+        }
+    }
+}
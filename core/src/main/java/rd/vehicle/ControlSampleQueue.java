@@ -0,0 +1,80 @@
+package rd.vehicle;
+
+/**
+ * Timestamped values of the on-screen controls, from the UI thread to
+ * whoever turns them into commands. Every touch sample Android reports,
+ * including the historical ones batched into a MOVE event, becomes one
+ * entry, so a consumer running at its own rate still sees the fine motion
+ * between two of its ticks.
+ *
+ * Samples are copied into preallocated arrays. When the consumer falls
+ * behind the oldest samples are overwritten.
+ */
+public class ControlSampleQueue
+{
+    private final int channels;
+    private final long[] times;
+    private final float[] values;
+    private int head = 0, size = 0;
+    private long overwritten = 0;
+
+    /**
+     * @param capacity  Number of samples kept for the consumer
+     * @param channels  Number of values in a sample
+     */
+    public ControlSampleQueue(int capacity, int channels)
+    {
+        this.channels = channels;
+        times = new long[capacity];
+        values = new float[capacity * channels];
+    }
+
+    public int channels()
+    {
+        return channels;
+    }
+
+    /**
+     * @param timeNs  When the input was sampled, on the System.nanoTime() clock
+     * @param sample  channels() values
+     */
+    public synchronized void put(long timeNs, float[] sample)
+    {
+        if (size == times.length)
+        {
+            head = (head + 1) % times.length;
+            size--;
+            overwritten++;
+        }
+        int slot = (head + size) % times.length;
+        times[slot] = timeNs;
+        System.arraycopy(sample, 0, values, slot * channels, channels);
+        size++;
+    }
+
+    /**
+     * Remove the oldest sample
+     * @param dst  Receives channels() values
+     * @return The time of the sample, or -1 if there is none
+     */
+    public synchronized long poll(float[] dst)
+    {
+        if (size == 0) return -1;
+        long time = times[head];
+        System.arraycopy(values, head * channels, dst, 0, channels);
+        head = (head + 1) % times.length;
+        size--;
+        return time;
+    }
+
+    public synchronized void clear()
+    {
+        head = 0;
+        size = 0;
+    }
+
+    public synchronized int size() { return size; }
+
+    /** Samples lost because nobody polled them in time */
+    public synchronized long getOverwritten() { return overwritten; }
+}
@@ -0,0 +1,195 @@
+package rd.vehicle;
+
+/**
+ * The figures, charts and readouts of the control screen, and how they are
+ * drawn. Knows nothing of the platform: drawing goes through a Gl, and the
+ * surface that owns the EGL context calls contextCreated, surfaceChanged
+ * and drawFrame on its GL thread.
+ */
+public class ControlScene
+{
+    // Indices into figCtrls, in the order ControlLoop reads the samples
+    static final int CTRL_SPIN = ControlLoop.CHANNEL_SPIN, CTRL_MOVE = ControlLoop.CHANNEL_MOVE, CTRL_BRAKE = ControlLoop.CHANNEL_BRAKE;
+
+    // Built and changed on the UI thread only; the GL thread draws snapshots of them
+    public final Figure figs[];
+    public final FigureControl figCtrls[];
+    private final TripleBuffer<RenderState> mState;
+    private final CountingGl gl;
+    private final GlyphAtlas.Rasterizer mGlyphs;
+    private FigureBatch mBatch; // null until built for the current EGL context
+    private TelemetryHud mHud; // likewise
+    private TextRenderer mText; // likewise
+    private final TextBuffer mLine = new TextBuffer(64);
+    private static final String[] STATE_NAMES = {"none", "listening", "connecting", "connected"};
+    private volatile Movement mMovement; // sources of the readouts, may be null
+    private volatile VehicleLink mLink;
+    private final TelemetryHistory mTelemetry = new TelemetryHistory();
+    private volatile boolean hudVisible = true;
+    private final MetricsOverlay mMetricsOverlay = new MetricsOverlay(Metrics.get());
+    private final Metrics.Timer mFrameTime = Metrics.get().timer("frame");
+    private volatile boolean metricsVisible = false;
+    public volatile Viewport viewport; // null until the surface has a size
+
+    /**
+     * @param gl  Where all drawing goes, counted on the way
+     * @param glyphs  Rasterizes the font of the readouts
+     */
+    public ControlScene(Gl gl, GlyphAtlas.Rasterizer glyphs)
+    {
+        this.gl = new CountingGl(gl);
+        mGlyphs = glyphs;
+
+        LongIndicator mLongIndicator = new LongIndicator();
+        mLongIndicator.setScale(-1.1f, 1.1f, 3.3f, -1.1f);
+        mLongIndicator.setSpin(-90);
+
+        SpeedMark mSpeedMark = new SpeedMark();
+        mSpeedMark.setScale(-10.0f, 10.0f, 6.0f, -24.0f); // don't change this scale.
+        mSpeedMark.setSpin(-90);
+
+        BreakButton mBreakButton = new BreakButton();
+        mBreakButton.setScale( 5.0f, -5.0f, -6.5f, 8.5f);
+
+        figs = new Figure[] {mLongIndicator, mSpeedMark, mBreakButton};
+        figCtrls = new FigureControl[]
+        {
+                new FigureControlSpin(mLongIndicator),
+                new FigureControlMoveX(mSpeedMark),
+                new FigureControlButton(mBreakButton)
+        };
+        mState = new TripleBuffer<RenderState>(
+                new RenderState(figs.length), new RenderState(figs.length), new RenderState(figs.length));
+        publishState();
+    }
+
+    /** Snapshot the figures for the next frame. Call on the UI thread after changing them. */
+    public void publishState()
+    {
+        mState.back().capture(figs);
+        mState.publish();
+    }
+
+    public TelemetryHistory getTelemetry()
+    {
+        return mTelemetry;
+    }
+
+    public void setHudVisible(boolean visible)
+    {
+        hudVisible = visible;
+    }
+
+    public boolean isHudVisible()
+    {
+        return hudVisible;
+    }
+
+    /** Show the metrics of the app on the right */
+    public void setMetricsVisible(boolean visible)
+    {
+        metricsVisible = visible;
+    }
+
+    public boolean isMetricsVisible()
+    {
+        return metricsVisible;
+    }
+
+    // Charts along the top of the screen: wheel speeds, battery, round trip time
+    private TelemetryHud buildHud()
+    {
+        TelemetryHud hud = new TelemetryHud(gl, TelemetryHistory.CAPACITY);
+        hud.add(mTelemetry.vLeft, -0.95f, 0.75f, -0.35f, 0.95f, -2.5f, 2.5f, 0.0f, 0.3f, 1.0f);
+        hud.add(mTelemetry.vRight, -0.95f, 0.75f, -0.35f, 0.95f, -2.5f, 2.5f, 0.0f, 0.7f, 0.2f);
+        hud.add(mTelemetry.battery, -0.30f, 0.75f, 0.30f, 0.95f, 6.0f, 8.6f, 1.0f, 0.5f, 0.0f);
+        hud.add(mTelemetry.rtt, 0.35f, 0.75f, 0.95f, 0.95f, 0.0f, 200.0f, 0.7f, 0.0f, 0.7f);
+        return hud;
+    }
+
+    /** Show what is commanded and the state of the link */
+    public void setReadoutSources(Movement movement, VehicleLink link)
+    {
+        mMovement = movement;
+        mLink = link;
+    }
+
+    // Numbers in the bottom left corner and the metrics, formatted and laid out without allocating
+    private void drawReadouts(Viewport vp)
+    {
+        if (mText == null) mText = new TextRenderer(gl, mGlyphs.rasterize(Math.max(16.0f, vp.height / 30.0f)), 768);
+        TextLayout layout = mText.layout();
+        layout.clear();
+        float x = layout.cellWidth(), y = vp.height - 4 * layout.cellHeight();
+
+        Movement movement = mMovement;
+        if (movement != null)
+        {
+            DriveCommand cmd = movement.getCommand();
+            mLine.clear().append("v ").append(cmd.vBar, 2, 5).append(" m/s  w ").append(cmd.omega, 2, 5).append(" rad/s");
+            if (cmd.brk != 0) mLine.append("  BRAKE");
+            layout.add(mLine, x, y, vp);
+        }
+        y += layout.cellHeight();
+        mLine.clear().append("rtt ").append(mTelemetry.rtt.last(), 1, 5).append(" ms  bat ").append(mTelemetry.battery.last(), 2, 5).append(" V");
+        layout.add(mLine, x, y, vp);
+        y += layout.cellHeight();
+        VehicleLink link = mLink;
+        if (link != null)
+        {
+            int state = link.getState();
+            mLine.clear().append("link ").append(state >= 0 && state < STATE_NAMES.length ? STATE_NAMES[state] : "?");
+            layout.add(mLine, x, y, vp);
+        }
+        // Below the charts, against the right edge
+        if (metricsVisible)
+            mMetricsOverlay.layout(layout, vp.width - (MetricsOverlay.COLUMNS + 1) * layout.cellWidth(),
+                    0.15f * vp.height, vp, System.nanoTime());
+        mText.draw(0.1f, 0.1f, 0.1f);
+    }
+
+    /** Counts of the GL calls and the time of each frame */
+    public CountingGl getGl()
+    {
+        return gl;
+    }
+
+    /** Only call with a new EGL context: on the first start, or when the old one was lost */
+    public void contextCreated()
+    {
+        gl.resetState();
+        // Set the background frame color
+        gl.glClearColor(1.0f, 1.0f, 1.0f, 1.0f);
+        // Programs and buffers of a previous context are gone
+        ShaderProgram.clearCache();
+        mBatch = null;
+        mHud = null;
+        mText = null;
+    }
+
+    public void surfaceChanged(int width, int height)
+    {
+        gl.glViewport(0, 0, width, height);
+        viewport = new Viewport(width, height);
+    }
+
+    public void drawFrame()
+    {
+        gl.beginFrame();
+        // Redraw background color
+        gl.glClear(Gl.GL_COLOR_BUFFER_BIT);
+
+        // Only reads the geometry of the figures, which never changes
+        if (mBatch == null) mBatch = new FigureBatch(gl, figs);
+        mBatch.draw(mState.acquire());
+        if (hudVisible)
+        {
+            if (mHud == null) mHud = buildHud();
+            mHud.draw();
+        }
+        Viewport vp = viewport;
+        if (vp != null) drawReadouts(vp);
+        gl.endFrame();
+        mFrameTime.record(gl.getFrameCpuNs());
+    }
+}
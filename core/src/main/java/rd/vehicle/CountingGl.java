@@ -0,0 +1,484 @@
+package rd.vehicle;
+
+import java.nio.Buffer;
+
+/**
+ * Passes Gl calls on to another Gl and counts them: per kind of call, per
+ * frame and in total. It also counts redundant state changes, i.e. calls
+ * setting the program, buffer, texture, blending, line width or vertex
+ * attribute array to what it already is. It times each frame on the CPU
+ * between beginFrame() and endFrame(). GLES 2.0 has no timer queries, so
+ * if measureGpu is set the GPU time is approximated by how long a
+ * glFinish() at the end of the frame waits. That stalls the pipeline and
+ * is meant for benchmarking only.
+ *
+ * Counting does not allocate. Only call from the GL thread.
+ */
+public final class CountingGl implements Gl
+{
+    private static final int MAX_UNITS = 8, MAX_ATTRIBS = 16;
+    private static final GlCall[] CALLS = GlCall.values();
+
+    private final Gl gl;
+    private final long[] totals = new long[CALLS.length];
+    private final int[] frame = new int[CALLS.length];
+    private int calls, redundant, vertices;
+    private long uploaded;
+
+    // The state as set through this Gl
+    private int currentProgram, arrayBuffer, activeTexture = GL_TEXTURE0;
+    private final int[] textures = new int[MAX_UNITS];
+    private boolean blend;
+    private int blendSrc = -1, blendDst = -1;
+    private float lineWidth = 1.0f;
+    private final boolean[] attribs = new boolean[MAX_ATTRIBS];
+
+    private boolean measureGpu = false;
+    private long frameStartNs;
+    private final TimingStats mCpuStats = new TimingStats();
+    private final TimingStats mGpuStats = new TimingStats();
+
+    // Totals of the last frame ended
+    private int lastCalls, lastRedundant, lastVertices, lastDraws;
+    private long lastUploaded, lastCpuNs, lastGpuNs;
+
+    public CountingGl(Gl gl)
+    {
+        this.gl = gl;
+    }
+
+    private void count(GlCall call)
+    {
+        totals[call.ordinal()]++;
+        frame[call.ordinal()]++;
+        calls++;
+    }
+
+    /** Forget the tracked state, as after the context was lost */
+    public void resetState()
+    {
+        currentProgram = arrayBuffer = 0;
+        activeTexture = GL_TEXTURE0;
+        for (int i = 0; i < MAX_UNITS; i++) textures[i] = 0;
+        blend = false;
+        blendSrc = blendDst = -1;
+        lineWidth = 1.0f;
+        for (int i = 0; i < MAX_ATTRIBS; i++) attribs[i] = false;
+    }
+
+    /** Wait for the GPU at the end of every frame to time it */
+    public void setMeasureGpu(boolean measure)
+    {
+        measureGpu = measure;
+    }
+
+    public void beginFrame()
+    {
+        for (int i = 0; i < frame.length; i++) frame[i] = 0;
+        calls = redundant = vertices = 0;
+        uploaded = 0;
+        frameStartNs = System.nanoTime();
+    }
+
+    public void endFrame()
+    {
+        long end = System.nanoTime();
+        lastCpuNs = end - frameStartNs;
+        mCpuStats.record(lastCpuNs);
+        if (measureGpu)
+        {
+            gl.glFinish();
+            lastGpuNs = System.nanoTime() - end;
+            mGpuStats.record(lastGpuNs);
+        }
+        lastCalls = calls;
+        lastRedundant = redundant;
+        lastVertices = vertices;
+        lastDraws = frame[GlCall.DRAW_ARRAYS.ordinal()];
+        lastUploaded = uploaded;
+    }
+
+    /** Calls of a kind in the current frame */
+    public int getFrameCount(GlCall call) { return frame[call.ordinal()]; }
+
+    /** Calls of a kind since this Gl was created */
+    public long getTotalCount(GlCall call) { return totals[call.ordinal()]; }
+
+    // Of the last frame ended
+    public int getFrameCalls() { return lastCalls; }
+    public int getFrameDrawCalls() { return lastDraws; }
+    public int getFrameVertices() { return lastVertices; }
+    public int getFrameRedundant() { return lastRedundant; }
+    public long getFrameBytesUploaded() { return lastUploaded; }
+    public long getFrameCpuNs() { return lastCpuNs; }
+    public long getFrameGpuNs() { return lastGpuNs; }
+
+    public TimingStats getCpuStats() { return mCpuStats; }
+    public TimingStats getGpuStats() { return mGpuStats; }
+
+    @Override
+    public String toString()
+    {
+        return "calls=" + lastCalls + " draws=" + lastDraws + " redundant=" + lastRedundant
+                + " vertices=" + lastVertices + " uploaded=" + lastUploaded
+                + " cpu=" + mCpuStats + (measureGpu ? " gpu=" + mGpuStats : "");
+    }
+
+    @Override
+    public void glActiveTexture(int texture)
+    {
+        count(GlCall.ACTIVE_TEXTURE);
+        if (texture == activeTexture) redundant++;
+        activeTexture = texture;
+        gl.glActiveTexture(texture);
+    }
+
+    @Override
+    public void glAttachShader(int program, int shader)
+    {
+        count(GlCall.ATTACH_SHADER);
+        gl.glAttachShader(program, shader);
+    }
+
+    @Override
+    public void glBindBuffer(int target, int buffer)
+    {
+        count(GlCall.BIND_BUFFER);
+        if (target == GL_ARRAY_BUFFER)
+        {
+            if (buffer == arrayBuffer) redundant++;
+            arrayBuffer = buffer;
+        }
+        gl.glBindBuffer(target, buffer);
+    }
+
+    @Override
+    public void glBindTexture(int target, int texture)
+    {
+        count(GlCall.BIND_TEXTURE);
+        int unit = activeTexture - GL_TEXTURE0;
+        if (target == GL_TEXTURE_2D && unit >= 0 && unit < MAX_UNITS)
+        {
+            if (texture == textures[unit]) redundant++;
+            textures[unit] = texture;
+        }
+        gl.glBindTexture(target, texture);
+    }
+
+    @Override
+    public void glBlendFunc(int sfactor, int dfactor)
+    {
+        count(GlCall.BLEND_FUNC);
+        if (sfactor == blendSrc && dfactor == blendDst) redundant++;
+        blendSrc = sfactor;
+        blendDst = dfactor;
+        gl.glBlendFunc(sfactor, dfactor);
+    }
+
+    @Override
+    public void glBufferData(int target, int size, Buffer data, int usage)
+    {
+        count(GlCall.BUFFER_DATA);
+        uploaded += size;
+        gl.glBufferData(target, size, data, usage);
+    }
+
+    @Override
+    public void glBufferSubData(int target, int offset, int size, Buffer data)
+    {
+        count(GlCall.BUFFER_SUB_DATA);
+        uploaded += size;
+        gl.glBufferSubData(target, offset, size, data);
+    }
+
+    @Override
+    public void glClear(int mask)
+    {
+        count(GlCall.CLEAR);
+        gl.glClear(mask);
+    }
+
+    @Override
+    public void glClearColor(float red, float green, float blue, float alpha)
+    {
+        count(GlCall.CLEAR_COLOR);
+        gl.glClearColor(red, green, blue, alpha);
+    }
+
+    @Override
+    public void glCompileShader(int shader)
+    {
+        count(GlCall.COMPILE_SHADER);
+        gl.glCompileShader(shader);
+    }
+
+    @Override
+    public int glCreateProgram()
+    {
+        count(GlCall.CREATE_PROGRAM);
+        return gl.glCreateProgram();
+    }
+
+    @Override
+    public int glCreateShader(int type)
+    {
+        count(GlCall.CREATE_SHADER);
+        return gl.glCreateShader(type);
+    }
+
+    @Override
+    public void glDeleteBuffers(int n, int[] buffers, int offset)
+    {
+        count(GlCall.DELETE_BUFFERS);
+        gl.glDeleteBuffers(n, buffers, offset);
+    }
+
+    @Override
+    public void glDeleteShader(int shader)
+    {
+        count(GlCall.DELETE_SHADER);
+        gl.glDeleteShader(shader);
+    }
+
+    @Override
+    public void glDeleteTextures(int n, int[] textures, int offset)
+    {
+        count(GlCall.DELETE_TEXTURES);
+        gl.glDeleteTextures(n, textures, offset);
+    }
+
+    @Override
+    public void glDisable(int cap)
+    {
+        count(GlCall.DISABLE);
+        if (cap == GL_BLEND)
+        {
+            if (!blend) redundant++;
+            blend = false;
+        }
+        gl.glDisable(cap);
+    }
+
+    @Override
+    public void glDisableVertexAttribArray(int index)
+    {
+        count(GlCall.DISABLE_VERTEX_ATTRIB_ARRAY);
+        if (index >= 0 && index < MAX_ATTRIBS)
+        {
+            if (!attribs[index]) redundant++;
+            attribs[index] = false;
+        }
+        gl.glDisableVertexAttribArray(index);
+    }
+
+    @Override
+    public void glDrawArrays(int mode, int first, int count)
+    {
+        count(GlCall.DRAW_ARRAYS);
+        vertices += count;
+        gl.glDrawArrays(mode, first, count);
+    }
+
+    @Override
+    public void glEnable(int cap)
+    {
+        count(GlCall.ENABLE);
+        if (cap == GL_BLEND)
+        {
+            if (blend) redundant++;
+            blend = true;
+        }
+        gl.glEnable(cap);
+    }
+
+    @Override
+    public void glEnableVertexAttribArray(int index)
+    {
+        count(GlCall.ENABLE_VERTEX_ATTRIB_ARRAY);
+        if (index >= 0 && index < MAX_ATTRIBS)
+        {
+            if (attribs[index]) redundant++;
+            attribs[index] = true;
+        }
+        gl.glEnableVertexAttribArray(index);
+    }
+
+    @Override
+    public void glFinish()
+    {
+        count(GlCall.FINISH);
+        gl.glFinish();
+    }
+
+    @Override
+    public void glGenBuffers(int n, int[] buffers, int offset)
+    {
+        count(GlCall.GEN_BUFFERS);
+        gl.glGenBuffers(n, buffers, offset);
+    }
+
+    @Override
+    public void glGenTextures(int n, int[] textures, int offset)
+    {
+        count(GlCall.GEN_TEXTURES);
+        gl.glGenTextures(n, textures, offset);
+    }
+
+    @Override
+    public int glGetAttribLocation(int program, String name)
+    {
+        count(GlCall.GET_ATTRIB_LOCATION);
+        return gl.glGetAttribLocation(program, name);
+    }
+
+    @Override
+    public String glGetProgramInfoLog(int program)
+    {
+        count(GlCall.GET_PROGRAM_INFO_LOG);
+        return gl.glGetProgramInfoLog(program);
+    }
+
+    @Override
+    public void glGetProgramiv(int program, int pname, int[] params, int offset)
+    {
+        count(GlCall.GET_PROGRAM_IV);
+        gl.glGetProgramiv(program, pname, params, offset);
+    }
+
+    @Override
+    public String glGetShaderInfoLog(int shader)
+    {
+        count(GlCall.GET_SHADER_INFO_LOG);
+        return gl.glGetShaderInfoLog(shader);
+    }
+
+    @Override
+    public void glGetShaderiv(int shader, int pname, int[] params, int offset)
+    {
+        count(GlCall.GET_SHADER_IV);
+        gl.glGetShaderiv(shader, pname, params, offset);
+    }
+
+    @Override
+    public int glGetUniformLocation(int program, String name)
+    {
+        count(GlCall.GET_UNIFORM_LOCATION);
+        return gl.glGetUniformLocation(program, name);
+    }
+
+    @Override
+    public void glLineWidth(float width)
+    {
+        count(GlCall.LINE_WIDTH);
+        if (width == lineWidth) redundant++;
+        lineWidth = width;
+        gl.glLineWidth(width);
+    }
+
+    @Override
+    public void glLinkProgram(int program)
+    {
+        count(GlCall.LINK_PROGRAM);
+        gl.glLinkProgram(program);
+    }
+
+    @Override
+    public void glPixelStorei(int pname, int param)
+    {
+        count(GlCall.PIXEL_STORE_I);
+        gl.glPixelStorei(pname, param);
+    }
+
+    @Override
+    public void glShaderSource(int shader, String string)
+    {
+        count(GlCall.SHADER_SOURCE);
+        gl.glShaderSource(shader, string);
+    }
+
+    @Override
+    public void glTexImage2D(int target, int level, int internalformat, int width, int height, int border, int format, int type, Buffer pixels)
+    {
+        count(GlCall.TEX_IMAGE_2D);
+        gl.glTexImage2D(target, level, internalformat, width, height, border, format, type, pixels);
+    }
+
+    @Override
+    public void glTexParameteri(int target, int pname, int param)
+    {
+        count(GlCall.TEX_PARAMETER_I);
+        gl.glTexParameteri(target, pname, param);
+    }
+
+    @Override
+    public void glUniform1f(int location, float x)
+    {
+        count(GlCall.UNIFORM_1F);
+        gl.glUniform1f(location, x);
+    }
+
+    @Override
+    public void glUniform1i(int location, int x)
+    {
+        count(GlCall.UNIFORM_1I);
+        gl.glUniform1i(location, x);
+    }
+
+    @Override
+    public void glUniform2f(int location, float x, float y)
+    {
+        count(GlCall.UNIFORM_2F);
+        gl.glUniform2f(location, x, y);
+    }
+
+    @Override
+    public void glUniform4f(int location, float x, float y, float z, float w)
+    {
+        count(GlCall.UNIFORM_4F);
+        gl.glUniform4f(location, x, y, z, w);
+    }
+
+    @Override
+    public void glUniform4fv(int location, int count, float[] v, int offset)
+    {
+        count(GlCall.UNIFORM_4FV);
+        gl.glUniform4fv(location, count, v, offset);
+    }
+
+    @Override
+    public void glUniformMatrix4fv(int location, int count, boolean transpose, float[] value, int offset)
+    {
+        count(GlCall.UNIFORM_MATRIX_4FV);
+        gl.glUniformMatrix4fv(location, count, transpose, value, offset);
+    }
+
+    @Override
+    public void glUseProgram(int program)
+    {
+        count(GlCall.USE_PROGRAM);
+        if (program == currentProgram) redundant++;
+        currentProgram = program;
+        gl.glUseProgram(program);
+    }
+
+    @Override
+    public void glVertexAttribPointer(int index, int size, int type, boolean normalized, int stride, int offset)
+    {
+        count(GlCall.VERTEX_ATTRIB_POINTER);
+        gl.glVertexAttribPointer(index, size, type, normalized, stride, offset);
+    }
+
+    @Override
+    public void glVertexAttribPointer(int index, int size, int type, boolean normalized, int stride, Buffer ptr)
+    {
+        count(GlCall.VERTEX_ATTRIB_POINTER);
+        gl.glVertexAttribPointer(index, size, type, normalized, stride, ptr);
+    }
+
+    @Override
+    public void glViewport(int x, int y, int width, int height)
+    {
+        count(GlCall.VIEWPORT);
+        gl.glViewport(x, y, width, height);
+    }
+}
@@ -0,0 +1,31 @@
+package rd.vehicle;
+
+/**
+ * Immutable snapshot of everything the vehicle is told in one command.
+ * Readers on other threads always see a consistent set of values.
+ */
+public final class DriveCommand
+{
+    public static final DriveCommand STOP = new DriveCommand(0.0f, 0.0f, 0.0f, 0.0f, 0, 0);
+
+    public final float vLeft, vRight; // m/s
+    public final float vBar, omega; // positive angle means left
+    public final int brk;
+    public final long timestampNs; // System.nanoTime() of creation
+
+    public DriveCommand(float vLeft, float vRight, float vBar, float omega, int brk, long timestampNs)
+    {
+        this.vLeft = vLeft;
+        this.vRight = vRight;
+        this.vBar = vBar;
+        this.omega = omega;
+        this.brk = brk;
+        this.timestampNs = timestampNs;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "vLeft=" + vLeft + ",vRight=" + vRight + ",vBar=" + vBar + ",omega=" + omega + ",brk=" + brk;
+    }
+}
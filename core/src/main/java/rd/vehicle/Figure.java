@@ -0,0 +1,196 @@
+package rd.vehicle;
+
+abstract class Figure
+{
+    abstract protected float[] triangleCoords();
+    abstract protected float[] color();
+    abstract protected float[] transform();
+    protected float touchCenterX() { return 0; }
+    protected float touchCenterY() { return 0; }
+    protected float touchRadiusSqure() { return 0; }
+
+    public boolean validTouch(float touchingX, float touchingY, Viewport vp)
+    {
+        return false;
+    }
+
+    /**
+     * Where the figure's origin is on the screen
+     * @param out  Receives x and y in normalized device coordinates
+     */
+    public void origin(float[] out)
+    {
+        out[0] = 0.0f;
+        out[1] = 0.0f;
+    }
+}
+
+abstract class FigureWithSpin extends Figure
+{
+    private float vTransform[];
+    private double curDgr = 0;
+    private boolean dirty = false;
+
+    public void addSpin(double dgree)
+    {
+        if (dgree == 0) return;
+        curDgr += dgree;
+        dirty = true;
+        transformChanged();
+    }
+
+    public void setSpin(double dgree)
+    {
+        addSpin(dgree-curDgr);
+    }
+
+    /** Called whenever transform() will return something new */
+    protected void transformChanged() {}
+
+    @Override
+    protected float[] transform()
+    {
+        if (dirty)
+        {
+            Mat4.setRotateZ(vTransform, curDgr);
+            dirty = false;
+        }
+        return vTransform;
+    }
+
+    public FigureWithSpin()
+    {
+        vTransform = new float[16];
+        Mat4.setIdentity(vTransform);
+    }
+}
+
+abstract class FigureWithScale extends FigureWithSpin
+{
+    private float vTransform[];
+    private float curLB, curRB, curUB, curDB;
+    private float Mul[]; // vTransform times the spin, valid unless dirty
+    private boolean dirty = true;
+
+    public void setScale(float lBound, float rBound, float uBound, float dBound)
+    {
+        if (lBound == curLB && rBound == curRB && uBound == curUB && dBound == curDB) return;
+        Mat4.ortho(vTransform, lBound, rBound, dBound, uBound, -1, 1);
+        curLB = lBound; curRB = rBound; curDB = dBound; curUB = uBound;
+        dirty = true;
+    }
+
+    public void addScale(float lBound, float rBound, float uBound, float dBound)
+    {
+        setScale(curLB+lBound, curRB+rBound, curUB+uBound, curDB+dBound);
+    }
+
+    @Override
+    protected void transformChanged()
+    {
+        dirty = true;
+    }
+
+    @Override
+    protected float[] transform()
+    {
+        if (dirty)
+        {
+            Mat4.multiply(Mul, vTransform, super.transform());
+            dirty = false;
+        }
+        return Mul;
+    }
+
+    @Override
+    public void origin(float[] out)
+    {
+        float[] m = transform();
+        out[0] = Mat4.mapX(m, 0.0f, 0.0f);
+        out[1] = Mat4.mapY(m, 0.0f, 0.0f);
+    }
+
+    @Override
+    public boolean validTouch(float touchingX, float touchingY, Viewport vp)
+    {
+        float[] m = transform();
+        float dx = Mat4.mapX(m, touchCenterX(), touchCenterY()) - vp.toNdcX(touchingX);
+        float dy = Mat4.mapY(m, touchCenterX(), touchCenterY()) - vp.toNdcY(touchingY);
+        float curDistanceSquare = dx*dx + dy*dy;
+        boolean hit = curDistanceSquare<=touchRadiusSqure();
+        Tracer.event(TraceEvent.VALID_TOUCH, curDistanceSquare, touchRadiusSqure(), hit ? 1 : 0);
+        return hit;
+    }
+
+    public FigureWithScale()
+    {
+        vTransform = new float[16];
+        Mul = new float[16];
+        Mat4.setIdentity(vTransform);
+    }
+}
+
+final class LongIndicator extends FigureWithScale
+{
+    private static float vTriangleCoords[] =
+    {
+        0.00f,  1.00f,  0.00f,
+        -0.02f, 0.00f,  0.00f,
+        0.02f,  0.00f,  0.00f,
+
+        0.00f,  0.50f,  0.00f,
+        -0.10f, 0.60f,  0.00f,
+        0.10f,  0.60f,  0.00f,
+
+        0.00f,  0.70f,  0.00f,
+        -0.10f, 0.60f,  0.00f,
+        0.10f,  0.60f,  0.00f,
+    };
+    private static float vColor[] = {0.0f, 0.0f, 0.0f, 1.0f};
+
+    protected float[] triangleCoords() { return vTriangleCoords; }
+    protected float[] color() { return vColor; }
+    protected float touchCenterX() { return 0.0f; }
+    protected float touchCenterY() { return 0.6f; }
+    protected float touchRadiusSqure() { return 0.1f; }
+}
+
+final class SpeedMark extends FigureWithScale
+{
+    private static float vTriangleCoords[] =
+    {
+        -1.0f,   -1.0f,    0.0f,
+        1.0f,    -1.0f,    0.0f,
+        0.0f,    1.0f,     0.0f
+    };
+    private static float vColor[] = {0.0f, 0.0f, 0.0f, 1.0f};
+
+    protected float[] triangleCoords() { return vTriangleCoords; }
+    protected float[] color() { return vColor; }
+    protected float touchCenterX() { return 0.0f; }
+    protected float touchCenterY() { return 0.0f; }
+    protected float touchRadiusSqure() { return 0.1f; }
+}
+
+final class BreakButton extends FigureWithScale
+{
+    private static float vTriangleCoords[] =
+    {
+        -1.0f,   -1.0f,    0.0f,
+        1.0f,    -1.0f,    0.0f,
+        -1.0f,   1.0f,     0.0f,
+        1.0f,    -1.0f,    0.0f,
+        -1.0f,   1.0f,     0.0f,
+        1.0f,    1.0f,     0.0f
+    };
+    private float vColor[] = {1.0f, 0.0f, 0.0f, 1.0f};
+
+    public void press() { vColor[0] = 0.5f; }
+    public void unpress() { vColor[0] = 1.0f; }
+
+    protected float[] triangleCoords() { return vTriangleCoords; }
+    protected float[] color() { return vColor; }
+    protected float touchCenterX() { return 0.0f; }
+    protected float touchCenterY() { return 0.0f; }
+    protected float touchRadiusSqure() { return 0.05f; }
+}
@@ -0,0 +1,113 @@
+package rd.vehicle;
+
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+
+/**
+ * Draws many figures with a single draw call. The static geometry of all
+ * figures lives in one VBO where each vertex carries the index of its
+ * figure; transforms and colors are passed per figure in uniform arrays.
+ *
+ * A figure's geometry is fixed once the batch is built; its transform and
+ * color come from the RenderState drawn.
+ */
+final class FigureBatch
+{
+    // Each figure takes 5 uniform vectors; GLES 2.0 guarantees 128 in the vertex shader
+    public static final int MAX_FIGURES = 16;
+
+    private static final int COORDS_PER_VERTEX = 3;
+    private static final int FLOATS_PER_VERTEX = COORDS_PER_VERTEX + 1;
+    private static final int STRIDE = FLOATS_PER_VERTEX * 4;
+
+    private static final String vertexShaderCode =
+            "attribute vec4 vPosition;" +
+            "attribute float vIndex;" +
+            "uniform mat4 vTransforms[" + MAX_FIGURES + "];" +
+            "uniform vec4 vColors[" + MAX_FIGURES + "];" +
+            "varying vec4 fColor;" +
+            "void main() {" +
+            "  int i = int(vIndex);" +
+            "  gl_Position = vTransforms[i] * vPosition;" +
+            "  fColor = vColors[i];" +
+            "}";
+
+    private static final String fragmentShaderCode =
+            "precision mediump float;" +
+            "varying vec4 fColor;" +
+            "void main() {" +
+            "  gl_FragColor = fColor;" +
+            "}";
+
+    private final Gl gl;
+    private final int figureCount;
+    private final int vertexCount;
+    private final int vbo;
+
+    private final ShaderProgram mProgram;
+    private final int mPositionHandle, mIndexHandle, mTransformsHandle, mColorsHandle;
+
+    /** Upload the geometry of the figures. Must run on the GL thread. */
+    public FigureBatch(Gl gl, Figure[] figs)
+    {
+        this.gl = gl;
+        if (figs.length > MAX_FIGURES)
+            throw new IllegalArgumentException("at most " + MAX_FIGURES + " figures per batch");
+        figureCount = figs.length;
+
+        int count = 0;
+        for (Figure fig : figs)
+            count += fig.triangleCoords().length / COORDS_PER_VERTEX;
+        vertexCount = count;
+
+        FloatBuffer data = ByteBuffer.allocateDirect(vertexCount * STRIDE)
+                .order(ByteOrder.nativeOrder()).asFloatBuffer();
+        for (int f = 0; f < figs.length; f++)
+        {
+            float[] coords = figs[f].triangleCoords();
+            for (int v = 0; v < coords.length; v += COORDS_PER_VERTEX)
+            {
+                data.put(coords, v, COORDS_PER_VERTEX);
+                data.put(f);
+            }
+        }
+        data.position(0);
+
+        int[] buffers = new int[1];
+        gl.glGenBuffers(1, buffers, 0);
+        vbo = buffers[0];
+        gl.glBindBuffer(Gl.GL_ARRAY_BUFFER, vbo);
+        gl.glBufferData(Gl.GL_ARRAY_BUFFER, vertexCount * STRIDE, data, Gl.GL_STATIC_DRAW);
+        gl.glBindBuffer(Gl.GL_ARRAY_BUFFER, 0);
+
+        mProgram = ShaderProgram.get(gl, vertexShaderCode, fragmentShaderCode);
+        mPositionHandle = mProgram.attribLocation("vPosition");
+        mIndexHandle = mProgram.attribLocation("vIndex");
+        mTransformsHandle = mProgram.uniformLocation("vTransforms");
+        mColorsHandle = mProgram.uniformLocation("vColors");
+    }
+
+    /** @param state  Captured from the figures the batch was built from */
+    public void draw(RenderState state)
+    {
+        if (state.count != figureCount)
+            throw new IllegalArgumentException(state.count + " figures in the state, " + figureCount + " in the batch");
+        gl.glUseProgram(mProgram.program);
+        gl.glUniformMatrix4fv(mTransformsHandle, figureCount, false, state.transforms, 0);
+        gl.glUniform4fv(mColorsHandle, figureCount, state.colors, 0);
+
+        gl.glBindBuffer(Gl.GL_ARRAY_BUFFER, vbo);
+        gl.glEnableVertexAttribArray(mPositionHandle);
+        gl.glVertexAttribPointer(mPositionHandle, COORDS_PER_VERTEX, Gl.GL_FLOAT, false, STRIDE, 0);
+        gl.glEnableVertexAttribArray(mIndexHandle);
+        gl.glVertexAttribPointer(mIndexHandle, 1, Gl.GL_FLOAT, false, STRIDE, COORDS_PER_VERTEX * 4);
+
+        gl.glDrawArrays(Gl.GL_TRIANGLES, 0, vertexCount);
+
+        gl.glDisableVertexAttribArray(mPositionHandle);
+        gl.glDisableVertexAttribArray(mIndexHandle);
+        gl.glBindBuffer(Gl.GL_ARRAY_BUFFER, 0);
+    }
+}
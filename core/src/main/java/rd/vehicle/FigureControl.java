@@ -0,0 +1,158 @@
+package rd.vehicle;
+
+abstract class FigureControl
+{
+    protected int tracking;
+    protected float lastX, lastY;
+    protected Figure fig;
+
+    abstract public float getVal();
+
+    public void onDown(float x, float y, Viewport vp, int id)
+    {
+        if (! fig.validTouch(x, y, vp)) return;
+        tracking = id;
+        lastX = x;
+        lastY = y;
+        Tracer.event(TraceEvent.CONTROL_DOWN, x, y, id);
+    }
+
+    public void onMove(float x, float y, Viewport vp, int id)
+    {
+        if (tracking!=id) return;
+        lastX = x;
+        lastY = y;
+        Tracer.event(TraceEvent.CONTROL_MOVE, x, y, id);
+    }
+
+    public void onUp(int id)
+    {
+        if (tracking!=id) return;
+        tracking = -1;
+        Tracer.event(TraceEvent.CONTROL_UP, id);
+    }
+
+    public boolean isTracking(int id)
+    {
+        return tracking==id;
+    }
+
+    public FigureControl(Figure _fig)
+    {
+        fig = _fig;
+        tracking = -1;
+    }
+}
+
+class FigureControlMoveX extends FigureControl
+{
+    double lastX;
+
+    @Override
+    public void onDown(float x, float y, Viewport vp, int id)
+    {
+        super.onDown(x, y, vp, id);
+        if (tracking==id) lastX = vp.toNdcX(x);
+    }
+
+    @Override
+    public void onMove(float x, float y, Viewport vp, int id)
+    {
+        if (tracking!=id) return;
+        double curX = vp.toNdcX(x);
+        if (curX<-0.7 || curX>0.7) return;
+        ((FigureWithScale)fig).addScale(-(float)(curX-lastX)*10, -(float)(curX-lastX)*10, 0.0f, 0.0f);
+        lastX = curX;
+        super.onMove(x, y, vp, id);
+    }
+
+    @Override
+    public float getVal() { return (float)(lastX/0.7*2); } // -2~2 m/s
+
+    public FigureControlMoveX(Figure _fig)
+    {
+        super(_fig);
+    }
+}
+
+class FigureControlSpin extends FigureControl
+{
+    double lastDgr;
+    private final float[] origin = new float[2];
+
+    private double findDgr(float touchingX, float touchingY, Viewport vp)
+    {
+        touchingY = vp.height-touchingY;
+        fig.origin(origin);
+        float originX = vp.fromNdcX(origin[0]);
+        float originY = vp.fromNdcYUp(origin[1]);
+        double dgr = Math.atan2(touchingY-originY, touchingX-originX)/Math.PI*180;
+        Tracer.event(TraceEvent.SPIN_ANGLE, touchingX, touchingY, (float)dgr);
+        return dgr;
+    }
+
+    @Override
+    public void onDown(float x, float y, Viewport vp, int id)
+    {
+        super.onDown(x, y, vp, id);
+        if (tracking==id) lastDgr = findDgr(x, y, vp);
+    }
+
+    @Override
+    public void onMove(float x, float y, Viewport vp, int id)
+    {
+        if (tracking!=id) return;
+        double curDgr = findDgr(x, y, vp);
+        ((FigureWithSpin)fig).addSpin(curDgr-lastDgr);
+        lastDgr = curDgr;
+        super.onMove(x, y, vp, id);
+    }
+
+    @Override
+    public float getVal() { return (float)(lastDgr/180*Math.PI); }
+
+    public FigureControlSpin(Figure _fig)
+    {
+        super(_fig);
+    }
+}
+
+class FigureControlButton extends FigureControl
+{
+    private int pressing = 0;
+
+    @Override
+    public void onDown(float x, float y, Viewport vp, int id)
+    {
+        super.onDown(x, y, vp, id);
+        if (! fig.validTouch(x, y, vp)) return;
+        pressing = 1;
+        ((BreakButton)fig).press();
+    }
+
+    @Override
+    public void onMove(float x, float y, Viewport vp, int id)
+    {
+        if (tracking!=id) return;
+        super.onMove(x, y, vp, id);
+        if (fig.validTouch(x, y, vp)) return;
+        pressing = 0;
+        ((BreakButton)fig).unpress();
+    }
+
+    @Override
+    public void onUp(int id)
+    {
+        super.onUp(id);
+        pressing = 0;
+        ((BreakButton)fig).unpress();
+    }
+
+    @Override
+    public float getVal() { return pressing; }
+
+    public FigureControlButton(Figure _fig)
+    {
+        super(_fig);
+    }
+}
@@ -0,0 +1,96 @@
+package rd.vehicle;
+
+/**
+ * Incremental decoder of binary frames (see {@link Protocol}) from a byte
+ * stream. Chunks may split or join frames arbitrarily. Complete frames are
+ * parsed straight out of the incoming chunk when possible; only the tail of
+ * a split frame is kept back in an internal buffer. Garbage and frames with
+ * a bad checksum are skipped by searching for the next sync byte.
+ */
+public class FrameDecoder
+{
+    public interface Listener
+    {
+        /**
+         * A frame with a valid checksum arrived. The buffer is only valid
+         * during the call.
+         */
+        void onFrame(int type, int seq, byte[] buffer, int payloadOffset, int payloadLength);
+    }
+
+    private static final int MAX_FRAME = Protocol.OVERHEAD + Protocol.MAX_PAYLOAD;
+
+    private final Listener mListener;
+    private final byte[] pending = new byte[MAX_FRAME * 2];
+    private int pendingLength = 0;
+
+    private long frames = 0, errors = 0;
+
+    public FrameDecoder(Listener listener)
+    {
+        mListener = listener;
+    }
+
+    public void feed(byte[] buffer, int offset, int length)
+    {
+        while (pendingLength > 0 && length > 0)
+        {
+            // Complete the split frame with as few bytes as needed
+            int n = Math.min(length, pending.length - pendingLength);
+            System.arraycopy(buffer, offset, pending, pendingLength, n);
+            int total = pendingLength + n;
+            int used = parse(pending, 0, total);
+            if (used < pendingLength)
+            {
+                // Still short of a whole frame, everything went to pending
+                pendingLength = total - used;
+                System.arraycopy(pending, used, pending, 0, pendingLength);
+                return;
+            }
+            offset += used - pendingLength;
+            length -= used - pendingLength;
+            pendingLength = 0;
+        }
+        int used = parse(buffer, offset, length);
+        pendingLength = length - used;
+        System.arraycopy(buffer, offset + used, pending, 0, pendingLength);
+    }
+
+    /**
+     * Dispatch all complete frames
+     * @return The number of bytes consumed. The rest is the start of a frame.
+     */
+    private int parse(byte[] buf, int offset, int length)
+    {
+        int pos = offset, end = offset + length;
+        while (pos < end)
+        {
+            if (buf[pos] != Protocol.SYNC) { pos++; continue; }
+            if (end - pos < 2) break;
+            int payload = Protocol.payloadLength(buf[pos + 1]);
+            if (payload < 0) { errors++; pos++; continue; }
+            int frameLength = Protocol.OVERHEAD + payload;
+            if (end - pos < frameLength) break;
+            if (Protocol.crc8(buf, pos + 1, frameLength - 2) != buf[pos + frameLength - 1])
+            {
+                errors++;
+                pos++;
+                continue;
+            }
+            frames++;
+            mListener.onFrame(buf[pos + 1], buf[pos + 2] & 0xff, buf, pos + 3, payload);
+            pos += frameLength;
+        }
+        return pos - offset;
+    }
+
+    public void reset()
+    {
+        pendingLength = 0;
+    }
+
+    public long getFrames() { return frames; }
+
+    /** Bytes skipped because of an unknown type or a bad checksum */
+    public long getErrors() { return errors; }
+}
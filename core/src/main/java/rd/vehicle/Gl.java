@@ -0,0 +1,97 @@
+package rd.vehicle;
+
+import java.nio.Buffer;
+
+/**
+ * The part of OpenGL ES 2.0 the renderer uses, with the same names,
+ * arguments and constants as android.opengl.GLES20. Everything drawn goes
+ * through one of these, so the calls of a frame can be counted
+ * (CountingGl) and the render path can run on a plain JVM (RecordingGl).
+ * AndroidGl passes the calls on to the real thing.
+ */
+public interface Gl
+{
+    int GL_FALSE = 0;
+    int GL_TRUE = 1;
+
+    int GL_LINES = 0x0001;
+    int GL_LINE_STRIP = 0x0003;
+    int GL_TRIANGLES = 0x0004;
+    int GL_TRIANGLE_STRIP = 0x0005;
+
+    int GL_COLOR_BUFFER_BIT = 0x4000;
+    int GL_BLEND = 0x0BE2;
+    int GL_SRC_ALPHA = 0x0302;
+    int GL_ONE_MINUS_SRC_ALPHA = 0x0303;
+
+    int GL_UNSIGNED_BYTE = 0x1401;
+    int GL_FLOAT = 0x1406;
+    int GL_ALPHA = 0x1906;
+
+    int GL_ARRAY_BUFFER = 0x8892;
+    int GL_STREAM_DRAW = 0x88E0;
+    int GL_STATIC_DRAW = 0x88E4;
+    int GL_DYNAMIC_DRAW = 0x88E8;
+
+    int GL_TEXTURE_2D = 0x0DE1;
+    int GL_TEXTURE0 = 0x84C0;
+    int GL_TEXTURE_MAG_FILTER = 0x2800;
+    int GL_TEXTURE_MIN_FILTER = 0x2801;
+    int GL_TEXTURE_WRAP_S = 0x2802;
+    int GL_TEXTURE_WRAP_T = 0x2803;
+    int GL_NEAREST = 0x2600;
+    int GL_LINEAR = 0x2601;
+    int GL_CLAMP_TO_EDGE = 0x812F;
+    int GL_UNPACK_ALIGNMENT = 0x0CF5;
+
+    int GL_FRAGMENT_SHADER = 0x8B30;
+    int GL_VERTEX_SHADER = 0x8B31;
+    int GL_COMPILE_STATUS = 0x8B81;
+    int GL_LINK_STATUS = 0x8B82;
+
+    void glActiveTexture(int texture);
+    void glAttachShader(int program, int shader);
+    void glBindBuffer(int target, int buffer);
+    void glBindTexture(int target, int texture);
+    void glBlendFunc(int sfactor, int dfactor);
+    void glBufferData(int target, int size, Buffer data, int usage);
+    void glBufferSubData(int target, int offset, int size, Buffer data);
+    void glClear(int mask);
+    void glClearColor(float red, float green, float blue, float alpha);
+    void glCompileShader(int shader);
+    int glCreateProgram();
+    int glCreateShader(int type);
+    void glDeleteBuffers(int n, int[] buffers, int offset);
+    void glDeleteShader(int shader);
+    void glDeleteTextures(int n, int[] textures, int offset);
+    void glDisable(int cap);
+    void glDisableVertexAttribArray(int index);
+    void glDrawArrays(int mode, int first, int count);
+    void glEnable(int cap);
+    void glEnableVertexAttribArray(int index);
+    void glFinish();
+    void glGenBuffers(int n, int[] buffers, int offset);
+    void glGenTextures(int n, int[] textures, int offset);
+    int glGetAttribLocation(int program, String name);
+    String glGetProgramInfoLog(int program);
+    void glGetProgramiv(int program, int pname, int[] params, int offset);
+    String glGetShaderInfoLog(int shader);
+    void glGetShaderiv(int shader, int pname, int[] params, int offset);
+    int glGetUniformLocation(int program, String name);
+    void glLineWidth(float width);
+    void glLinkProgram(int program);
+    void glPixelStorei(int pname, int param);
+    void glShaderSource(int shader, String string);
+    void glTexImage2D(int target, int level, int internalformat, int width, int height, int border, int format, int type, Buffer pixels);
+    void glTexParameteri(int target, int pname, int param);
+    void glUniform1f(int location, float x);
+    void glUniform1i(int location, int x);
+    void glUniform2f(int location, float x, float y);
+    void glUniform4f(int location, float x, float y, float z, float w);
+    void glUniform4fv(int location, int count, float[] v, int offset);
+    void glUniformMatrix4fv(int location, int count, boolean transpose, float[] value, int offset);
+    void glUseProgram(int program);
+    void glVertexAttribPointer(int index, int size, int type, boolean normalized, int stride, int offset);
+    void glVertexAttribPointer(int index, int size, int type, boolean normalized, int stride, Buffer ptr);
+    void glViewport(int x, int y, int width, int height);
+}
@@ -0,0 +1,50 @@
+package rd.vehicle;
+
+/** The kinds of Gl calls, for counting and recording them */
+public enum GlCall
+{
+    ACTIVE_TEXTURE,
+    ATTACH_SHADER,
+    BIND_BUFFER,
+    BIND_TEXTURE,
+    BLEND_FUNC,
+    BUFFER_DATA,
+    BUFFER_SUB_DATA,
+    CLEAR,
+    CLEAR_COLOR,
+    COMPILE_SHADER,
+    CREATE_PROGRAM,
+    CREATE_SHADER,
+    DELETE_BUFFERS,
+    DELETE_SHADER,
+    DELETE_TEXTURES,
+    DISABLE,
+    DISABLE_VERTEX_ATTRIB_ARRAY,
+    DRAW_ARRAYS,
+    ENABLE,
+    ENABLE_VERTEX_ATTRIB_ARRAY,
+    FINISH,
+    GEN_BUFFERS,
+    GEN_TEXTURES,
+    GET_ATTRIB_LOCATION,
+    GET_PROGRAM_INFO_LOG,
+    GET_PROGRAM_IV,
+    GET_SHADER_INFO_LOG,
+    GET_SHADER_IV,
+    GET_UNIFORM_LOCATION,
+    LINE_WIDTH,
+    LINK_PROGRAM,
+    PIXEL_STORE_I,
+    SHADER_SOURCE,
+    TEX_IMAGE_2D,
+    TEX_PARAMETER_I,
+    UNIFORM_1F,
+    UNIFORM_1I,
+    UNIFORM_2F,
+    UNIFORM_4F,
+    UNIFORM_4FV,
+    UNIFORM_MATRIX_4FV,
+    USE_PROGRAM,
+    VERTEX_ATTRIB_POINTER,
+    VIEWPORT;
+}
@@ -0,0 +1,43 @@
+package rd.vehicle;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The glyphs of TextLayout rasterized into an alpha bitmap of
+ * TextLayout.COLUMNS x TextLayout.ROWS cells, one byte per pixel, rows
+ * top to bottom and not padded.
+ */
+final class GlyphAtlas
+{
+    /** Draws the glyphs with some font machinery */
+    interface Rasterizer
+    {
+        /** @param textSize  Font size in pixels */
+        GlyphAtlas rasterize(float textSize);
+    }
+
+    public final int cellWidth, cellHeight;
+    public final int width, height;
+    public final ByteBuffer pixels;
+
+    GlyphAtlas(int cellWidth, int cellHeight, ByteBuffer pixels)
+    {
+        this.cellWidth = cellWidth;
+        this.cellHeight = cellHeight;
+        width = cellWidth * TextLayout.COLUMNS;
+        height = cellHeight * TextLayout.ROWS;
+        if (pixels.capacity() < width * height)
+            throw new IllegalArgumentException(pixels.capacity() + " bytes for " + width + "x" + height + " pixels");
+        this.pixels = pixels;
+    }
+
+    /** Invisible glyphs of a given cell size, where no fonts are available */
+    static final Rasterizer BLANK = new Rasterizer() {
+        @Override
+        public GlyphAtlas rasterize(float textSize) {
+            int cellWidth = (int)Math.ceil(textSize * 0.6f), cellHeight = (int)Math.ceil(textSize * 1.2f);
+            return new GlyphAtlas(cellWidth, cellHeight,
+                    ByteBuffer.allocateDirect(cellWidth * TextLayout.COLUMNS * cellHeight * TextLayout.ROWS));
+        }
+    };
+}
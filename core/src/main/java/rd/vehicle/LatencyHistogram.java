@@ -0,0 +1,98 @@
+package rd.vehicle;
+
+import java.io.PrintWriter;
+
+/**
+ * Histogram of latencies in nanoseconds with a fixed memory footprint.
+ * Buckets are linear within each power of two, so every recorded value is
+ * kept with a relative error below 1/32. Recording does not allocate.
+ */
+public class LatencyHistogram
+{
+    private static final int SUB_BITS = 5;
+    private static final int SUB_COUNT = 1 << SUB_BITS;
+
+    private final long[] counts = new long[(64 - SUB_BITS) * SUB_COUNT];
+    private long total = 0, max = 0, sum = 0;
+
+    private static int indexOf(long value)
+    {
+        if (value < SUB_COUNT) return (int)value;
+        int exp = 63 - Long.numberOfLeadingZeros(value) - SUB_BITS;
+        return exp * SUB_COUNT + (int)(value >>> exp);
+    }
+
+    /** The largest value falling into a bucket */
+    private static long highestOf(int index)
+    {
+        if (index < 2 * SUB_COUNT) return index;
+        int exp = index / SUB_COUNT - 1;
+        long sub = index - exp * SUB_COUNT;
+        return ((sub + 1) << exp) - 1;
+    }
+
+    public synchronized void record(long nanos)
+    {
+        if (nanos < 0) nanos = 0;
+        counts[indexOf(nanos)]++;
+        total++;
+        sum += nanos;
+        if (nanos > max) max = nanos;
+    }
+
+    public synchronized void reset()
+    {
+        for (int i = 0; i < counts.length; i++) counts[i] = 0;
+        total = 0;
+        max = 0;
+        sum = 0;
+    }
+
+    public synchronized long getCount() { return total; }
+    public synchronized long getMax() { return max; }
+    public synchronized double getMean() { return total == 0 ? 0 : (double)sum / total; }
+
+    /**
+     * @param percentile  In [0, 100]
+     * @return The value below which the given percentage of samples fall
+     */
+    public synchronized long getPercentile(double percentile)
+    {
+        if (total == 0) return 0;
+        long rank = (long)Math.ceil(percentile / 100.0 * total);
+        if (rank < 1) rank = 1;
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++)
+        {
+            seen += counts[i];
+            if (seen >= rank) return Math.min(highestOf(i), max);
+        }
+        return max;
+    }
+
+    public long getP50() { return getPercentile(50); }
+    public long getP99() { return getPercentile(99); }
+    public long getP999() { return getPercentile(99.9); }
+
+    /**
+     * Write a summary line and then one "upper bound in ns, count" line
+     * per non-empty bucket.
+     */
+    public synchronized void export(PrintWriter out)
+    {
+        out.println("# " + toString());
+        for (int i = 0; i < counts.length; i++)
+            if (counts[i] != 0) out.println(highestOf(i) + "," + counts[i]);
+        out.flush();
+    }
+
+    @Override
+    public synchronized String toString()
+    {
+        return "n=" + total
+                + " p50=" + getP50()/1e6 + "ms"
+                + " p99=" + getP99()/1e6 + "ms"
+                + " p999=" + getP999()/1e6 + "ms"
+                + " max=" + max/1e6 + "ms";
+    }
+}
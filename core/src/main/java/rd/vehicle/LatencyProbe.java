@@ -0,0 +1,106 @@
+package rd.vehicle;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Measures the round trip time of the link. PING frames carrying the send
+ * time are written periodically; the vehicle echoes them back and the
+ * difference to the arrival time goes into a histogram. The clocks of the
+ * phone and the vehicle never need to agree.
+ *
+ * ECHO frames reach the probe through onFrame(), so it can be fed by any
+ * FrameDecoder reading from the link.
+ */
+public class LatencyProbe implements FrameDecoder.Listener
+{
+    public static final long DEFAULT_PERIOD_MS = 200;
+
+    // Echoes older than this are considered lost and not recorded
+    private static final long TIMEOUT_NS = 10000000000L;
+
+    private final VehicleLink mLink;
+    private final LatencyHistogram mHistogram = new LatencyHistogram();
+    private final ByteBuffer mFrame = ByteBuffer.allocate(Protocol.OVERHEAD + Protocol.PING_PAYLOAD);
+    private int seq = 0;
+    private long sent = 0, received = 0;
+    private Thread mThread;
+    private volatile SampleRing mSeries;
+
+    public LatencyProbe(VehicleLink link)
+    {
+        mLink = link;
+    }
+
+    public LatencyHistogram getHistogram()
+    {
+        return mHistogram;
+    }
+
+    /** Also append every round trip time, in ms, to a series. Null to stop. */
+    public void setSeries(SampleRing series)
+    {
+        mSeries = series;
+    }
+
+    /** Write one PING frame now */
+    public synchronized void ping()
+    {
+        mFrame.clear();
+        mFrame.put(Protocol.SYNC);
+        mFrame.put(Protocol.TYPE_PING);
+        mFrame.put((byte)seq);
+        mFrame.putLong(System.nanoTime());
+        mFrame.put(Protocol.crc8(mFrame.array(), 1, mFrame.position() - 1));
+        seq = (seq + 1) & 0xff;
+        sent++;
+        mLink.write(mFrame.array(), 0, mFrame.position());
+    }
+
+    @Override
+    public void onFrame(int type, int seq, byte[] buffer, int payloadOffset, int payloadLength)
+    {
+        if (type != Protocol.TYPE_ECHO) return;
+        long sentNs = 0;
+        for (int i = 0; i < 8; i++)
+            sentNs = (sentNs << 8) | (buffer[payloadOffset + i] & 0xff);
+        long rtt = System.nanoTime() - sentNs;
+        if (rtt < 0 || rtt > TIMEOUT_NS) return;
+        synchronized (this) {
+            received++;
+        }
+        mHistogram.record(rtt);
+        SampleRing series = mSeries;
+        if (series != null) series.add(rtt / 1e6f);
+    }
+
+    /** Ping every periodMs on a thread of the probe's own */
+    public synchronized void start(final long periodMs)
+    {
+        if (mThread != null) return;
+        mThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    while (!Thread.currentThread().isInterrupted()) {
+                        ping();
+                        Thread.sleep(periodMs);
+                    }
+                } catch (InterruptedException e) {
+                    // stopped
+                }
+            }
+        }, "LatencyProbe");
+        mThread.setDaemon(true);
+        mThread.start();
+    }
+
+    public synchronized void stop()
+    {
+        if (mThread == null) return;
+        mThread.interrupt();
+        mThread = null;
+    }
+
+    public synchronized long getSent() { return sent; }
+    public synchronized long getReceived() { return received; }
+}
@@ -0,0 +1,43 @@
+package rd.vehicle;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The original ASCII format "%vL vR brk#" understood by older firmware.
+ */
+public class LegacyCommandEncoder implements CommandEncoder
+{
+    // '%' + two signed int16 + single digit brake + separators + '#'
+    private static final int MAX_FRAME_SIZE = 1 + 6 + 1 + 6 + 1 + 1 + 1;
+
+    @Override
+    public int maxFrameSize()
+    {
+        return MAX_FRAME_SIZE;
+    }
+
+    @Override
+    public void encode(ByteBuffer out, int vLeft, int vRight, int brk)
+    {
+        out.put((byte)'%');
+        putDecimal(out, Protocol.toInt16(vLeft));
+        out.put((byte)' ');
+        putDecimal(out, Protocol.toInt16(vRight));
+        out.put((byte)' ');
+        out.put((byte)(brk != 0 ? '1' : '0'));
+        out.put((byte)'#');
+    }
+
+    private static void putDecimal(ByteBuffer out, int value)
+    {
+        if (value < 0)
+        {
+            out.put((byte)'-');
+            value = -value;
+        }
+        int div = 1;
+        while (value / div >= 10) div *= 10;
+        for (; div > 0; div /= 10)
+            out.put((byte)('0' + value / div % 10));
+    }
+}
@@ -0,0 +1,201 @@
+package rd.vehicle;
+
+import java.util.Random;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-memory VehicleLink. Two ends are created together by pair(); bytes
+ * written to one end arrive at the other after a fixed latency, and each
+ * write is lost with the given probability.
+ */
+public class LoopbackVehicleLink implements VehicleLink
+{
+    private final long latencyNs;
+    private final double lossRate;
+    private final Random random;
+
+    private LoopbackVehicleLink mPeer;
+    private volatile Listener mListener;
+    private int mState = STATE_NONE;
+    private final DelayQueue<Packet> mInbox = new DelayQueue<Packet>();
+    private Thread mDeliverThread;
+
+    private final AtomicLong delivered = new AtomicLong(), lost = new AtomicLong();
+    // Orders packets due at the same time, as the queue does not keep the order they were added in
+    private final AtomicLong mSequence = new AtomicLong();
+
+    private static class Packet implements Delayed
+    {
+        final byte[] data;
+        final long dueNs;
+        final long sequence;
+
+        Packet(byte[] data, long dueNs, long sequence)
+        {
+            this.data = data;
+            this.dueNs = dueNs;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit)
+        {
+            return unit.convert(dueNs - System.nanoTime(), TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed o)
+        {
+            Packet p = (Packet)o;
+            long diff = dueNs != p.dueNs ? dueNs - p.dueNs : sequence - p.sequence;
+            return diff < 0 ? -1 : diff > 0 ? 1 : 0;
+        }
+    }
+
+    private LoopbackVehicleLink(long latencyNs, double lossRate, long seed)
+    {
+        this.latencyNs = latencyNs;
+        this.lossRate = lossRate;
+        this.random = new Random(seed);
+    }
+
+    /**
+     * Create two connected ends.
+     * @param latencyNs  One-way delay of every write
+     * @param lossRate  Probability in [0, 1) that a write is dropped
+     */
+    public static LoopbackVehicleLink[] pair(long latencyNs, double lossRate)
+    {
+        LoopbackVehicleLink a = new LoopbackVehicleLink(latencyNs, lossRate, 1);
+        LoopbackVehicleLink b = new LoopbackVehicleLink(latencyNs, lossRate, 2);
+        a.mPeer = b;
+        b.mPeer = a;
+        return new LoopbackVehicleLink[] {a, b};
+    }
+
+    public LoopbackVehicleLink getPeer()
+    {
+        return mPeer;
+    }
+
+    @Override
+    public void setListener(Listener listener)
+    {
+        mListener = listener;
+    }
+
+    private void setState(int state)
+    {
+        synchronized (this) {
+            if (mState == state) return;
+            mState = state;
+        }
+        Listener l = mListener;
+        if (l != null) l.onStateChanged(state);
+    }
+
+    @Override
+    public synchronized int getState()
+    {
+        return mState;
+    }
+
+    /** Connect both ends. The address is ignored */
+    @Override
+    public void connect(String address)
+    {
+        open();
+        mPeer.open();
+    }
+
+    private void open()
+    {
+        synchronized (this) {
+            if (mDeliverThread == null) {
+                mDeliverThread = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        deliverLoop();
+                    }
+                }, "LoopbackDeliverThread");
+                mDeliverThread.setDaemon(true);
+                mDeliverThread.start();
+            }
+        }
+        setState(STATE_CONNECTED);
+    }
+
+    /** Disconnect both ends */
+    @Override
+    public void stop()
+    {
+        close();
+        mPeer.close();
+    }
+
+    private void close()
+    {
+        synchronized (this) {
+            if (mDeliverThread != null) {
+                mDeliverThread.interrupt();
+                mDeliverThread = null;
+            }
+            mInbox.clear();
+        }
+        setState(STATE_NONE);
+    }
+
+    /** Writes are not queued, so there is nothing to replace */
+    @Override
+    public void writeLatest(byte[] buffer, int offset, int length, long originNs)
+    {
+        write(buffer, offset, length);
+    }
+
+    /** Writes are not queued, so there is nothing to overtake */
+    @Override
+    public void writeUrgent(byte[] buffer, int offset, int length, long originNs)
+    {
+        write(buffer, offset, length);
+    }
+
+    @Override
+    public void write(byte[] buffer, int offset, int length)
+    {
+        if (getState() != STATE_CONNECTED) return;
+        boolean drop;
+        synchronized (random) {
+            drop = lossRate > 0 && random.nextDouble() < lossRate;
+        }
+        if (drop) {
+            lost.incrementAndGet();
+            return;
+        }
+        byte[] data = new byte[length];
+        System.arraycopy(buffer, offset, data, 0, length);
+        mPeer.mInbox.put(new Packet(data, System.nanoTime() + latencyNs, mSequence.getAndIncrement()));
+    }
+
+    private void deliverLoop()
+    {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                Packet p = mInbox.take();
+                delivered.incrementAndGet();
+                Listener l = mListener;
+                if (l != null) l.onRead(p.data, 0, p.data.length);
+            }
+        } catch (InterruptedException e) {
+            // closed
+        }
+    }
+
+    /** Writes from the peer handed to this end's listener */
+    public long getDelivered() { return delivered.get(); }
+
+    /** Writes of this end dropped by the simulated loss */
+    public long getLost() { return lost.get(); }
+}
@@ -0,0 +1,68 @@
+package rd.vehicle;
+
+/**
+ * The few 4x4 matrix operations the figures need, in the column-major
+ * layout of android.opengl.Matrix. Plain Java, so the geometry can run
+ * and be tested off the device; nothing here allocates.
+ */
+final class Mat4
+{
+    public static void setIdentity(float[] m)
+    {
+        for (int i = 0; i < 16; i++) m[i] = 0.0f;
+        m[0] = m[5] = m[10] = m[15] = 1.0f;
+    }
+
+    /** Rotation around the z axis, same as Matrix.setRotateM(m, 0, degree, 0, 0, 1) */
+    public static void setRotateZ(float[] m, double degree)
+    {
+        double rad = Math.toRadians(degree);
+        float c = (float)Math.cos(rad), s = (float)Math.sin(rad);
+        setIdentity(m);
+        m[0] = c; m[1] = s;
+        m[4] = -s; m[5] = c;
+    }
+
+    /** Same as Matrix.orthoM(m, 0, left, right, bottom, top, near, far) */
+    public static void ortho(float[] m, float left, float right, float bottom, float top, float near, float far)
+    {
+        float rWidth = 1.0f / (right - left);
+        float rHeight = 1.0f / (top - bottom);
+        float rDepth = 1.0f / (far - near);
+        for (int i = 0; i < 16; i++) m[i] = 0.0f;
+        m[0] = 2.0f * rWidth;
+        m[5] = 2.0f * rHeight;
+        m[10] = -2.0f * rDepth;
+        m[12] = -(right + left) * rWidth;
+        m[13] = -(top + bottom) * rHeight;
+        m[14] = -(far + near) * rDepth;
+        m[15] = 1.0f;
+    }
+
+    /** result = lhs * rhs. The result must not be one of the operands. */
+    public static void multiply(float[] result, float[] lhs, float[] rhs)
+    {
+        for (int i = 0; i < 4; i++)
+            for (int j = 0; j < 4; j++)
+            {
+                float sum = 0.0f;
+                for (int k = 0; k < 4; k++)
+                    sum += lhs[k * 4 + j] * rhs[i * 4 + k];
+                result[i * 4 + j] = sum;
+            }
+    }
+
+    /** x component of m * (x, y, 0, 1) */
+    public static float mapX(float[] m, float x, float y)
+    {
+        return m[0] * x + m[4] * y + m[12];
+    }
+
+    /** y component of m * (x, y, 0, 1) */
+    public static float mapY(float[] m, float x, float y)
+    {
+        return m[1] * x + m[5] * y + m[13];
+    }
+
+    private Mat4() {}
+}
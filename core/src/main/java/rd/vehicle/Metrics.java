@@ -0,0 +1,179 @@
+package rd.vehicle;
+
+import java.io.PrintWriter;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Named counters, timers and gauges of the control stack, for a live
+ * overlay and for comparing builds and phones. Metrics are registered once,
+ * usually when their owner is created; updating and reading them takes no
+ * lock and does not allocate, so the sender, connected and GL threads
+ * update them as they go.
+ */
+public final class Metrics
+{
+    public static final int MAX_METRICS = 32;
+    public static final int COUNTER = 0, TIMER = 1, GAUGE = 2;
+
+    /**
+     * Longs per metric filled in by read(): for a counter its sum; for a
+     * timer the count, the total and the longest in nanoseconds; for a gauge
+     * its value.
+     */
+    public static final int VALUES = 3;
+
+    /** A value read when the metrics are, like the depth of a queue */
+    public interface Gauge
+    {
+        long value();
+    }
+
+    public static final class Counter
+    {
+        private final StripedCounter sum = new StripedCounter();
+
+        public void increment() { sum.increment(); }
+        public void add(long delta) { sum.add(delta); }
+        public long get() { return sum.sum(); }
+    }
+
+    public static final class Timer
+    {
+        private final StripedCounter count = new StripedCounter();
+        private final StripedCounter total = new StripedCounter();
+        private final AtomicLong max = new AtomicLong();
+        private final AtomicLong intervalMax = new AtomicLong(); // since takeIntervalMaxNs()
+
+        private static void raise(AtomicLong max, long nanos)
+        {
+            long m;
+            while (nanos > (m = max.get()) && !max.compareAndSet(m, nanos)) { /* lost a race, retry */ }
+        }
+
+        public void record(long nanos)
+        {
+            count.increment();
+            total.add(nanos);
+            raise(max, nanos);
+            raise(intervalMax, nanos);
+        }
+
+        public long getCount() { return count.sum(); }
+        public long getTotalNs() { return total.sum(); }
+        public long getMaxNs() { return max.get(); }
+
+        /** The longest time since the last call, starting over */
+        public long takeIntervalMaxNs() { return intervalMax.getAndSet(0); }
+    }
+
+    private static final Metrics sGlobal = new Metrics();
+
+    private final String[] names = new String[MAX_METRICS];
+    private final int[] kinds = new int[MAX_METRICS];
+    private final Object[] metrics = new Object[MAX_METRICS];
+    private volatile int size = 0;
+
+    /** The metrics of the app */
+    public static Metrics get()
+    {
+        return sGlobal;
+    }
+
+    private int indexOf(String name)
+    {
+        for (int i = 0; i < size; i++)
+            if (names[i].equals(name)) return i;
+        return -1;
+    }
+
+    private Object register(String name, int kind, Object metric)
+    {
+        int i = indexOf(name);
+        if (i >= 0)
+        {
+            if (kinds[i] != kind) throw new IllegalArgumentException(name + " is registered as another kind");
+            // Gauges read their owner, so a new owner takes over the name
+            if (kind == GAUGE) metrics[i] = metric;
+            return metrics[i];
+        }
+        if (size == MAX_METRICS) throw new IllegalStateException("more than " + MAX_METRICS + " metrics");
+        names[size] = name;
+        kinds[size] = kind;
+        metrics[size] = metric;
+        size++; // publishes the entry to readers
+        return metric;
+    }
+
+    /** The counter of this name, created on first use */
+    public synchronized Counter counter(String name)
+    {
+        return (Counter)register(name, COUNTER, new Counter());
+    }
+
+    /** The timer of this name, created on first use */
+    public synchronized Timer timer(String name)
+    {
+        return (Timer)register(name, TIMER, new Timer());
+    }
+
+    /** Register a gauge, replacing an earlier one of the same name */
+    public synchronized void gauge(String name, Gauge gauge)
+    {
+        register(name, GAUGE, gauge);
+    }
+
+    /** For a timer, its longest time since the last call, starting over; 0 for other kinds */
+    public long takeIntervalMax(int i)
+    {
+        return kinds[i] == TIMER ? ((Timer)metrics[i]).takeIntervalMaxNs() : 0;
+    }
+
+    public int size() { return size; }
+    public String name(int i) { return names[i]; }
+    public int kind(int i) { return kinds[i]; }
+
+    /**
+     * Read every metric into VALUES longs each, in the order registered
+     * @return The number of metrics read
+     */
+    public int read(long[] values)
+    {
+        int n = Math.min(size, values.length / VALUES);
+        for (int i = 0; i < n; i++)
+        {
+            int v = i * VALUES;
+            values[v+1] = values[v+2] = 0;
+            switch (kinds[i])
+            {
+                case COUNTER:
+                    values[v] = ((Counter)metrics[i]).get();
+                    break;
+                case TIMER:
+                    Timer t = (Timer)metrics[i];
+                    values[v] = t.getCount();
+                    values[v+1] = t.getTotalNs();
+                    values[v+2] = t.getMaxNs();
+                    break;
+                case GAUGE:
+                    values[v] = ((Gauge)metrics[i]).value();
+                    break;
+            }
+        }
+        return n;
+    }
+
+    /** Write a snapshot as "name,kind,value,total ns,max ns" lines */
+    public void export(PrintWriter out)
+    {
+        long[] values = new long[MAX_METRICS * VALUES];
+        int n = read(values);
+        out.println("name,kind,value,total_ns,max_ns");
+        for (int i = 0; i < n; i++)
+        {
+            int v = i * VALUES;
+            String kind = kinds[i] == COUNTER ? "counter" : kinds[i] == TIMER ? "timer" : "gauge";
+            out.println(names[i] + "," + kind + "," + values[v] + "," + values[v+1] + "," + values[v+2]);
+        }
+        out.flush();
+    }
+}
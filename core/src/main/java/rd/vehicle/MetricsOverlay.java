@@ -0,0 +1,78 @@
+package rd.vehicle;
+
+/**
+ * Lays out the metrics as text, one line each: a counter as its rate, a
+ * timer as its rate and its mean and longest time, a gauge as it is.
+ * Rates, means and longest times are over the last interval, recomputed
+ * once it has passed, so the numbers stay readable at any frame rate.
+ */
+final class MetricsOverlay
+{
+    static final long INTERVAL_MS = 500;
+    static final int COLUMNS = 54; // widest line
+    private static final int NAME_COLUMNS = 24;
+
+    private final Metrics mMetrics;
+    private long[] prev = new long[Metrics.MAX_METRICS * Metrics.VALUES];
+    private long[] cur = new long[Metrics.MAX_METRICS * Metrics.VALUES];
+    private final float[] rates = new float[Metrics.MAX_METRICS];
+    private final float[] means = new float[Metrics.MAX_METRICS]; // ms
+    private final float[] maxes = new float[Metrics.MAX_METRICS]; // ms
+    private int count = 0;
+    private long prevNs = 0;
+    private final TextBuffer mLine = new TextBuffer(COLUMNS + 8);
+
+    MetricsOverlay(Metrics metrics)
+    {
+        mMetrics = metrics;
+    }
+
+    private void update(long nowNs)
+    {
+        int n = mMetrics.read(cur);
+        float seconds = prevNs == 0 ? Float.NaN : (nowNs - prevNs) / 1e9f;
+        for (int i = 0; i < n; i++)
+        {
+            int v = i * Metrics.VALUES;
+            // Metrics registered since the last update start from nothing
+            long events = i < count ? cur[v] - prev[v] : cur[v];
+            long nanos = i < count ? cur[v+1] - prev[v+1] : cur[v+1];
+            rates[i] = events / seconds;
+            means[i] = events == 0 ? Float.NaN : nanos / 1e6f / events;
+            long max = mMetrics.takeIntervalMax(i);
+            maxes[i] = events == 0 ? Float.NaN : max / 1e6f;
+        }
+        count = n;
+        prevNs = nowNs;
+        long[] swap = prev; prev = cur; cur = swap;
+    }
+
+    /**
+     * Add a line per metric
+     * @param x  Left edge in pixels from the left of the viewport
+     * @param y  Top edge of the first line in pixels from the top of the viewport
+     */
+    void layout(TextLayout layout, float x, float y, Viewport vp, long nowNs)
+    {
+        if (prevNs == 0 || nowNs - prevNs >= INTERVAL_MS * 1000000L) update(nowNs);
+        for (int i = 0; i < count; i++, y += layout.cellHeight())
+        {
+            int v = i * Metrics.VALUES;
+            mLine.clear().append(mMetrics.name(i)).pad(NAME_COLUMNS);
+            switch (mMetrics.kind(i))
+            {
+                case Metrics.COUNTER:
+                    mLine.append(rates[i], 1, 8).append("/s  total ").append(prev[v]);
+                    break;
+                case Metrics.TIMER:
+                    mLine.append(rates[i], 1, 8).append("/s").append(means[i], 2, 7).append(" ms  max")
+                            .append(maxes[i], 1, 6);
+                    break;
+                case Metrics.GAUGE:
+                    mLine.append(prev[v]);
+                    break;
+            }
+            layout.add(mLine, x, y, vp);
+        }
+    }
+}
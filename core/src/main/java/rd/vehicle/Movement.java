@@ -0,0 +1,133 @@
+package rd.vehicle;
+
+import java.nio.ByteBuffer;
+
+public class Movement
+{
+    private VehicleLink mLink;
+    // The encoder may be swapped from the UI thread
+    private volatile CommandEncoder mEncoder = new LegacyCommandEncoder();
+    private ByteBuffer mFrame = ByteBuffer.allocate(mEncoder.maxFrameSize()); // guarded by mFrameLock
+    private final Object mFrameLock = new Object();
+    private long mLastOriginNs = 0; // guarded by mFrameLock
+
+    public static final int BRAKE_REPEAT = 3;
+
+    static final float Length = 0.38f; // metres, between the wheels
+
+    private final CommandMailbox mMailbox = new CommandMailbox();
+    private final Metrics.Counter mSent = Metrics.get().counter("commands.sent");
+    private final CommandScheduler mScheduler;
+
+    /**
+     * Encode a command and hand it to the link
+     * @param urgent  Send on the brake lane, ahead of queued velocity commands
+     */
+    private void send(DriveCommand cmd, boolean urgent)
+    {
+        synchronized (mFrameLock)
+        {
+            CommandEncoder encoder = mEncoder;
+            if (mFrame.capacity() < encoder.maxFrameSize())
+                mFrame = ByteBuffer.allocate(encoder.maxFrameSize());
+            // 2 m/s -> 4000
+            // 1 m/s -> 2000 half to adapt rotating
+            mFrame.clear();
+            encoder.encode(mFrame, (int)(cmd.vLeft*1000), (int)(cmd.vRight*1000), cmd.brk);
+            Tracer.event(TraceEvent.COMMAND_SENT, mFrame.position(), urgent ? 1 : 0,
+                    (int)((System.nanoTime() - cmd.timestampNs) / 1000));
+            // Only the first send of an input counts for latency, not heartbeats and repeats
+            long originNs = cmd.timestampNs == mLastOriginNs ? 0 : cmd.timestampNs;
+            mLastOriginNs = cmd.timestampNs;
+            if (urgent)
+            {
+                // The same frame, with the same sequence number, several times in case one is lost
+                for (int i = 0; i < BRAKE_REPEAT; i++)
+                    mLink.writeUrgent(mFrame.array(), 0, mFrame.position(), i == 0 ? originNs : 0);
+                mSent.add(BRAKE_REPEAT);
+            } else
+            {
+                mLink.writeLatest(mFrame.array(), 0, mFrame.position(), originNs);
+                mSent.increment();
+            }
+        }
+    }
+
+    public void send()
+    {
+        send(mMailbox.latest(), false);
+    }
+
+    /**
+     * Select the wire format. Use LegacyCommandEncoder for firmware that only
+     * understands the text format.
+     */
+    public void setEncoder(CommandEncoder encoder)
+    {
+        mEncoder = encoder;
+    }
+
+    public CommandEncoder getEncoder()
+    {
+        return mEncoder;
+    }
+
+    /** The command most recently requested */
+    public DriveCommand getCommand()
+    {
+        return mMailbox.latest();
+    }
+
+    /** The wheel speeds for a speed v and a turn rate w */
+    static DriveCommand toCommand(float v, float w, float _brk, long timestampNs)
+    {
+        float vLeft = v+2.0f*w*Length;
+        float vRight = v-2.0f*w*Length;
+        return new DriveCommand(vLeft, vRight, v, w, (int)_brk, timestampNs);
+    }
+
+    public void setRequire(float v, float w, float _brk)
+    {
+        setRequire(v, w, _brk, System.nanoTime());
+    }
+
+    /**
+     * @param timestampNs  System.nanoTime() of the input behind the command
+     */
+    public void setRequire(float v, float w, float _brk, long timestampNs)
+    {
+        DriveCommand cmd = toCommand(v, w, _brk, timestampNs);
+        boolean braking = cmd.brk != 0 && mMailbox.latest().brk == 0;
+        mMailbox.publish(cmd);
+        Tracer.event(TraceEvent.COMMAND_SET, v, w, cmd.brk);
+        // Pressing the brake does not wait for the scheduler
+        if (braking) send(cmd, true);
+        mScheduler.notifyChanged();
+        mScheduler.start();
+    }
+
+    public CommandScheduler getScheduler()
+    {
+        return mScheduler;
+    }
+
+    /*
+    public void setCurrent(float vL, float vR)
+    {
+        vLeft = vL; vRight = vR;
+        vBar = 0.5f*(vLeft+vRight);
+        omega = (vRight-vLeft)/Length;
+    }
+    */
+
+    public Movement(VehicleLink _Link)
+    {
+        mLink = _Link;
+        mScheduler = new CommandScheduler(new Runnable() {
+            @Override
+            public void run() {
+                send();
+            }
+        });
+    }
+}
@@ -0,0 +1,201 @@
+package rd.vehicle;
+
+/**
+ * Bounded queue of outgoing messages between the threads producing
+ * commands and the single thread writing them to the socket. Messages are
+ * copied into preallocated slots, so queueing does not allocate.
+ *
+ * There are three kinds of messages:
+ * - offer() queues behind everything else;
+ * - offerLatest() replaces the previous such message if that one has not
+ *   been written yet: a stale velocity command is worth nothing once a
+ *   newer one exists;
+ * - offerUrgent() goes ahead of everything but earlier urgent messages,
+ *   and discards the pending velocity command. It is the brake lane.
+ */
+public class OutboundQueue
+{
+    private static final byte NORMAL = 0, LATEST = 1, URGENT = 2;
+
+    private final byte[][] slots;
+    private final int[] lengths;
+    private final long[] stamps;
+    private final byte[] kinds;
+    private int head = 0, size = 0;
+
+    private long dropped = 0;
+    private int maxDepth = 0;
+
+    // Describe the message returned by the last take(), for the consumer thread
+    private long takenStampNs;
+    private boolean takenUrgent;
+
+    /**
+     * @param capacity  Number of messages that can be waiting
+     * @param maxMessageSize  Size of the largest message accepted
+     */
+    public OutboundQueue(int capacity, int maxMessageSize)
+    {
+        slots = new byte[capacity][maxMessageSize];
+        lengths = new int[capacity];
+        stamps = new long[capacity];
+        kinds = new byte[capacity];
+    }
+
+    private int physical(int index)
+    {
+        return (head + index) % slots.length;
+    }
+
+    private void put(int index, byte[] buffer, int offset, int length, long stampNs, byte kind)
+    {
+        if (length > slots[0].length)
+            throw new IllegalArgumentException("message of " + length + " bytes is too long");
+        int slot = physical(index);
+        System.arraycopy(buffer, offset, slots[slot], 0, length);
+        lengths[slot] = length;
+        stamps[slot] = stampNs;
+        kinds[slot] = kind;
+    }
+
+    /** Exchange two slots without copying the bytes */
+    private void swap(int i, int j)
+    {
+        int a = physical(i), b = physical(j);
+        byte[] slot = slots[a]; slots[a] = slots[b]; slots[b] = slot;
+        int length = lengths[a]; lengths[a] = lengths[b]; lengths[b] = length;
+        long stamp = stamps[a]; stamps[a] = stamps[b]; stamps[b] = stamp;
+        byte kind = kinds[a]; kinds[a] = kinds[b]; kinds[b] = kind;
+    }
+
+    private int find(byte kind)
+    {
+        for (int i = 0; i < size; i++)
+            if (kinds[physical(i)] == kind) return i;
+        return -1;
+    }
+
+    private void remove(int index)
+    {
+        for (int i = index; i < size - 1; i++) swap(i, i + 1);
+        size--;
+    }
+
+    private boolean append(byte[] buffer, int offset, int length, long stampNs, byte kind)
+    {
+        if (size == slots.length)
+        {
+            // Full, the writer is stuck. Keep the queued messages in order.
+            dropped++;
+            return false;
+        }
+        put(size, buffer, offset, length, stampNs, kind);
+        size++;
+        if (size > maxDepth) maxDepth = size;
+        notifyAll();
+        return true;
+    }
+
+    /**
+     * Queue a message behind everything already queued
+     * @return false if the queue was full and the message was dropped
+     */
+    public synchronized boolean offer(byte[] buffer, int offset, int length)
+    {
+        return append(buffer, offset, length, 0, NORMAL);
+    }
+
+    /**
+     * Queue a message that supersedes the last message queued by this method
+     * @param stampNs  System.nanoTime() of the input behind the message, or 0
+     * @return false if the queue was full and the message was dropped
+     */
+    public synchronized boolean offerLatest(byte[] buffer, int offset, int length, long stampNs)
+    {
+        int index = find(LATEST);
+        if (index >= 0)
+        {
+            put(index, buffer, offset, length, stampNs, LATEST);
+            dropped++;
+            return true;
+        }
+        return append(buffer, offset, length, stampNs, LATEST);
+    }
+
+    /**
+     * Queue a message ahead of all but earlier urgent ones, dropping the
+     * pending offerLatest() message. If the queue is full, the last
+     * non-urgent message makes room.
+     * @param stampNs  System.nanoTime() of the input behind the message, or 0
+     * @return false if the queue is full of urgent messages
+     */
+    public synchronized boolean offerUrgent(byte[] buffer, int offset, int length, long stampNs)
+    {
+        int index = find(LATEST);
+        if (index >= 0)
+        {
+            remove(index);
+            dropped++;
+        }
+        int urgent = 0;
+        while (urgent < size && kinds[physical(urgent)] == URGENT) urgent++;
+        if (size == slots.length)
+        {
+            if (urgent == size)
+            {
+                dropped++;
+                return false;
+            }
+            size--;
+            dropped++;
+        }
+        // Append, then bubble forward behind the earlier urgent messages
+        put(size, buffer, offset, length, stampNs, URGENT);
+        size++;
+        for (int i = size - 1; i > urgent; i--) swap(i, i - 1);
+        if (size > maxDepth) maxDepth = size;
+        notifyAll();
+        return true;
+    }
+
+    /**
+     * Wait for the next message and copy it out. Only one thread may take.
+     * @param dst  Receives the message, at least maxMessageSize() long
+     * @return The length of the message
+     */
+    public synchronized int take(byte[] dst) throws InterruptedException
+    {
+        while (size == 0) wait();
+        int length = lengths[head];
+        System.arraycopy(slots[head], 0, dst, 0, length);
+        takenStampNs = stamps[head];
+        takenUrgent = kinds[head] == URGENT;
+        head = (head + 1) % slots.length;
+        size--;
+        return length;
+    }
+
+    /** The stamp passed with the message returned by the last take() */
+    public synchronized long getTakenStampNs() { return takenStampNs; }
+
+    /** Whether the message returned by the last take() was urgent */
+    public synchronized boolean isTakenUrgent() { return takenUrgent; }
+
+    /** The largest message take() may return */
+    public int maxMessageSize()
+    {
+        return slots[0].length;
+    }
+
+    public synchronized void clear()
+    {
+        head = 0;
+        size = 0;
+    }
+
+    public synchronized int getDepth() { return size; }
+    public synchronized int getMaxDepth() { return maxDepth; }
+
+    /** Messages replaced by a newer one or rejected because the queue was full */
+    public synchronized long getDropped() { return dropped; }
+}
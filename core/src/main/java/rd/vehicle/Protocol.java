@@ -0,0 +1,82 @@
+package rd.vehicle;
+
+/**
+ * Constants of the binary wire format shared by the phone and the vehicle.
+ *
+ * Every frame is laid out as
+ *   SYNC | type | seq | payload ... | crc8
+ * where crc8 covers everything from type to the end of the payload.
+ * Multi-byte fields are big endian.
+ */
+public final class Protocol
+{
+    public static final byte SYNC = (byte)0xA5;
+
+    // Frame types
+    public static final byte TYPE_DRIVE = 0x01;     // phone -> vehicle
+    public static final byte TYPE_PING = 0x02;      // phone -> vehicle
+    public static final byte TYPE_TELEMETRY = 0x10; // vehicle -> phone
+    public static final byte TYPE_ECHO = 0x12;      // vehicle -> phone, answers PING
+
+    // DRIVE payload: vLeft(int16, mm/s) vRight(int16, mm/s) flags(uint8)
+    public static final int DRIVE_PAYLOAD = 5;
+    public static final int FLAG_BRAKE = 0x01;
+
+    // PING payload: timestamp(int64, ns). ECHO returns seq and payload unchanged.
+    public static final int PING_PAYLOAD = 8;
+
+    // TELEMETRY payload: vLeft(int16, mm/s) vRight(int16, mm/s) battery(uint16, mV)
+    public static final int TELEMETRY_PAYLOAD = 6;
+
+    /** Largest payload of any frame type */
+    public static final int MAX_PAYLOAD = 8;
+
+    /**
+     * @return The payload length of a frame type, or -1 for an unknown type
+     */
+    public static int payloadLength(int type)
+    {
+        switch (type)
+        {
+            case TYPE_DRIVE: return DRIVE_PAYLOAD;
+            case TYPE_PING:
+            case TYPE_ECHO: return PING_PAYLOAD;
+            case TYPE_TELEMETRY: return TELEMETRY_PAYLOAD;
+            default: return -1;
+        }
+    }
+
+    /** Bytes of framing around a payload: sync, type, seq and crc */
+    public static final int OVERHEAD = 4;
+
+    private static final byte[] CRC8_TABLE = new byte[256];
+    static
+    {
+        // CRC-8, polynomial x^8 + x^2 + x + 1
+        for (int i = 0; i < 256; i++)
+        {
+            int crc = i;
+            for (int b = 0; b < 8; b++)
+                crc = (crc & 0x80) != 0 ? (crc << 1) ^ 0x07 : crc << 1;
+            CRC8_TABLE[i] = (byte)crc;
+        }
+    }
+
+    public static byte crc8(byte[] data, int offset, int length)
+    {
+        int crc = 0;
+        for (int i = offset; i < offset + length; i++)
+            crc = CRC8_TABLE[(crc ^ data[i]) & 0xff];
+        return (byte)crc;
+    }
+
+    /** Clamp a value into the int16 range of the fixed-point fields */
+    public static short toInt16(int value)
+    {
+        if (value > Short.MAX_VALUE) return Short.MAX_VALUE;
+        if (value < Short.MIN_VALUE) return Short.MIN_VALUE;
+        return (short)value;
+    }
+
+    private Protocol() {}
+}
@@ -0,0 +1,71 @@
+package rd.vehicle;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Writes what an OutboundQueue holds to a stream, on the thread that runs
+ * it. Times each write, and for a message stamped with the input behind
+ * it, the time from that input until the message was written. Movement
+ * stamps only the first send of an input, so heartbeats and repeated
+ * brakes are not timed again. The times also go to Metrics.
+ */
+public class QueueWriter
+{
+    private final OutboundQueue mQueue;
+    private final TimingStats mWriteStats = new TimingStats();
+    private final LatencyHistogram mDrive = new LatencyHistogram(), mBrake = new LatencyHistogram();
+    private final Metrics.Counter mBytesWritten = Metrics.get().counter("link.bytes.out");
+    private final Metrics.Timer mWriteTime = Metrics.get().timer("link.write");
+    private final Metrics.Timer mDriveTime = Metrics.get().timer("commands.latency.drive");
+    private final Metrics.Timer mBrakeTime = Metrics.get().timer("commands.latency.brake");
+    private volatile long written = 0;
+
+    public QueueWriter(OutboundQueue queue)
+    {
+        mQueue = queue;
+    }
+
+    /** Take and write messages until interrupted or the stream fails */
+    public void run(OutputStream out) throws IOException, InterruptedException
+    {
+        byte[] buffer = new byte[mQueue.maxMessageSize()];
+        while (!Thread.currentThread().isInterrupted())
+        {
+            int length = mQueue.take(buffer);
+            long start = System.nanoTime();
+            out.write(buffer, 0, length);
+            long end = System.nanoTime();
+            written++;
+            mWriteStats.record(end - start);
+            mWriteTime.record(end - start);
+            mBytesWritten.add(length);
+            Tracer.event(TraceEvent.LINK_WRITE, length, mQueue.isTakenUrgent() ? 1 : 0, (int)((end - start) / 1000));
+            long origin = mQueue.getTakenStampNs();
+            if (origin != 0)
+            {
+                if (mQueue.isTakenUrgent())
+                {
+                    mBrake.record(end - origin);
+                    mBrakeTime.record(end - origin);
+                } else
+                {
+                    mDrive.record(end - origin);
+                    mDriveTime.record(end - origin);
+                }
+            }
+        }
+    }
+
+    /** Time spent in each write to the stream */
+    public TimingStats getWriteStats() { return mWriteStats; }
+
+    /** Time from the input behind a velocity command until it was written */
+    public LatencyHistogram getDriveLatency() { return mDrive; }
+
+    /** Time from the input behind a brake command until it was written */
+    public LatencyHistogram getBrakeLatency() { return mBrake; }
+
+    /** Messages written so far */
+    public long getWritten() { return written; }
+}
@@ -0,0 +1,58 @@
+package rd.vehicle;
+
+import java.util.Random;
+
+/**
+ * Exponential backoff between reconnect attempts. The delay doubles with
+ * every failed attempt up to a cap, and a random part of it is spread out
+ * so retries do not fall into lockstep with the vehicle's own restarts.
+ */
+public class ReconnectPolicy
+{
+    public static final long DEFAULT_INITIAL_MS = 100;
+    public static final long DEFAULT_MAX_MS = 5000;
+    public static final double DEFAULT_JITTER = 0.5;
+
+    private final long initialMs, maxMs;
+    private final double jitter;
+    private final Random random = new Random();
+    private int attempts = 0;
+
+    public ReconnectPolicy()
+    {
+        this(DEFAULT_INITIAL_MS, DEFAULT_MAX_MS, DEFAULT_JITTER);
+    }
+
+    /**
+     * @param initialMs  Delay before the first attempt
+     * @param maxMs  Upper bound of any delay
+     * @param jitter  Fraction of each delay that is randomized, in [0, 1]
+     */
+    public ReconnectPolicy(long initialMs, long maxMs, double jitter)
+    {
+        this.initialMs = initialMs;
+        this.maxMs = maxMs;
+        this.jitter = jitter;
+    }
+
+    /** Delay before the next attempt, counting it as made */
+    public synchronized long nextDelayMs()
+    {
+        long delay = initialMs << Math.min(attempts, 20);
+        if (delay > maxMs || delay <= 0) delay = maxMs;
+        attempts++;
+        long spread = (long)(delay * jitter);
+        return delay - spread + (spread > 0 ? (long)(random.nextDouble() * spread) : 0);
+    }
+
+    public synchronized int getAttempts()
+    {
+        return attempts;
+    }
+
+    /** Start over after a successful connection */
+    public synchronized void reset()
+    {
+        attempts = 0;
+    }
+}
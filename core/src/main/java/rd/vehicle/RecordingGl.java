@@ -0,0 +1,359 @@
+package rd.vehicle;
+
+import java.nio.Buffer;
+import java.util.HashMap;
+
+/**
+ * A Gl that draws nothing, for running the render path on a plain JVM. It
+ * hands out object ids, reports every shader and program as compiled and
+ * linked, and records the kind of every call in order. The log has a
+ * fixed capacity; calls beyond it are only counted. Recording does not
+ * allocate.
+ */
+public final class RecordingGl implements Gl
+{
+    private static final GlCall[] CALLS = GlCall.values();
+
+    private final byte[] log;
+    private int size = 0;
+    private long calls = 0, vertices = 0, uploaded = 0;
+    private int lastId = 0;
+    private final HashMap<String, Integer> locations = new HashMap<String, Integer>();
+
+    public RecordingGl()
+    {
+        this(65536);
+    }
+
+    /** @param capacity  Calls kept in the log */
+    public RecordingGl(int capacity)
+    {
+        log = new byte[capacity];
+    }
+
+    private void record(GlCall call)
+    {
+        if (size < log.length) log[size++] = (byte)call.ordinal();
+        calls++;
+    }
+
+    // Every name gets a location of its own, whatever the program
+    private int location(String name)
+    {
+        Integer loc = locations.get(name);
+        if (loc == null)
+        {
+            loc = locations.size();
+            locations.put(name, loc);
+        }
+        return loc;
+    }
+
+    /** Calls in the log */
+    public int size() { return size; }
+
+    /** The i-th call in the log */
+    public GlCall get(int i) { return CALLS[log[i]]; }
+
+    /** Number of calls of a kind in the log */
+    public int count(GlCall call)
+    {
+        int n = 0;
+        for (int i = 0; i < size; i++)
+            if (log[i] == call.ordinal()) n++;
+        return n;
+    }
+
+    /** Empty the log; the counters keep going */
+    public void clear()
+    {
+        size = 0;
+    }
+
+    public long getCalls() { return calls; }
+    public long getVertices() { return vertices; }
+    public long getBytesUploaded() { return uploaded; }
+
+    @Override
+    public void glActiveTexture(int texture)
+    {
+        record(GlCall.ACTIVE_TEXTURE);
+    }
+
+    @Override
+    public void glAttachShader(int program, int shader)
+    {
+        record(GlCall.ATTACH_SHADER);
+    }
+
+    @Override
+    public void glBindBuffer(int target, int buffer)
+    {
+        record(GlCall.BIND_BUFFER);
+    }
+
+    @Override
+    public void glBindTexture(int target, int texture)
+    {
+        record(GlCall.BIND_TEXTURE);
+    }
+
+    @Override
+    public void glBlendFunc(int sfactor, int dfactor)
+    {
+        record(GlCall.BLEND_FUNC);
+    }
+
+    @Override
+    public void glBufferData(int target, int size, Buffer data, int usage)
+    {
+        record(GlCall.BUFFER_DATA);
+        uploaded += size;
+    }
+
+    @Override
+    public void glBufferSubData(int target, int offset, int size, Buffer data)
+    {
+        record(GlCall.BUFFER_SUB_DATA);
+        uploaded += size;
+    }
+
+    @Override
+    public void glClear(int mask)
+    {
+        record(GlCall.CLEAR);
+    }
+
+    @Override
+    public void glClearColor(float red, float green, float blue, float alpha)
+    {
+        record(GlCall.CLEAR_COLOR);
+    }
+
+    @Override
+    public void glCompileShader(int shader)
+    {
+        record(GlCall.COMPILE_SHADER);
+    }
+
+    @Override
+    public int glCreateProgram()
+    {
+        record(GlCall.CREATE_PROGRAM);
+        return ++lastId;
+    }
+
+    @Override
+    public int glCreateShader(int type)
+    {
+        record(GlCall.CREATE_SHADER);
+        return ++lastId;
+    }
+
+    @Override
+    public void glDeleteBuffers(int n, int[] buffers, int offset)
+    {
+        record(GlCall.DELETE_BUFFERS);
+    }
+
+    @Override
+    public void glDeleteShader(int shader)
+    {
+        record(GlCall.DELETE_SHADER);
+    }
+
+    @Override
+    public void glDeleteTextures(int n, int[] textures, int offset)
+    {
+        record(GlCall.DELETE_TEXTURES);
+    }
+
+    @Override
+    public void glDisable(int cap)
+    {
+        record(GlCall.DISABLE);
+    }
+
+    @Override
+    public void glDisableVertexAttribArray(int index)
+    {
+        record(GlCall.DISABLE_VERTEX_ATTRIB_ARRAY);
+    }
+
+    @Override
+    public void glDrawArrays(int mode, int first, int count)
+    {
+        record(GlCall.DRAW_ARRAYS);
+        vertices += count;
+    }
+
+    @Override
+    public void glEnable(int cap)
+    {
+        record(GlCall.ENABLE);
+    }
+
+    @Override
+    public void glEnableVertexAttribArray(int index)
+    {
+        record(GlCall.ENABLE_VERTEX_ATTRIB_ARRAY);
+    }
+
+    @Override
+    public void glFinish()
+    {
+        record(GlCall.FINISH);
+    }
+
+    @Override
+    public void glGenBuffers(int n, int[] buffers, int offset)
+    {
+        record(GlCall.GEN_BUFFERS);
+        for (int i = 0; i < n; i++) buffers[offset + i] = ++lastId;
+    }
+
+    @Override
+    public void glGenTextures(int n, int[] textures, int offset)
+    {
+        record(GlCall.GEN_TEXTURES);
+        for (int i = 0; i < n; i++) textures[offset + i] = ++lastId;
+    }
+
+    @Override
+    public int glGetAttribLocation(int program, String name)
+    {
+        record(GlCall.GET_ATTRIB_LOCATION);
+        return location(name);
+    }
+
+    @Override
+    public String glGetProgramInfoLog(int program)
+    {
+        record(GlCall.GET_PROGRAM_INFO_LOG);
+        return "";
+    }
+
+    @Override
+    public void glGetProgramiv(int program, int pname, int[] params, int offset)
+    {
+        record(GlCall.GET_PROGRAM_IV);
+        params[offset] = GL_TRUE;
+    }
+
+    @Override
+    public String glGetShaderInfoLog(int shader)
+    {
+        record(GlCall.GET_SHADER_INFO_LOG);
+        return "";
+    }
+
+    @Override
+    public void glGetShaderiv(int shader, int pname, int[] params, int offset)
+    {
+        record(GlCall.GET_SHADER_IV);
+        params[offset] = GL_TRUE;
+    }
+
+    @Override
+    public int glGetUniformLocation(int program, String name)
+    {
+        record(GlCall.GET_UNIFORM_LOCATION);
+        return location(name);
+    }
+
+    @Override
+    public void glLineWidth(float width)
+    {
+        record(GlCall.LINE_WIDTH);
+    }
+
+    @Override
+    public void glLinkProgram(int program)
+    {
+        record(GlCall.LINK_PROGRAM);
+    }
+
+    @Override
+    public void glPixelStorei(int pname, int param)
+    {
+        record(GlCall.PIXEL_STORE_I);
+    }
+
+    @Override
+    public void glShaderSource(int shader, String string)
+    {
+        record(GlCall.SHADER_SOURCE);
+    }
+
+    @Override
+    public void glTexImage2D(int target, int level, int internalformat, int width, int height, int border, int format, int type, Buffer pixels)
+    {
+        record(GlCall.TEX_IMAGE_2D);
+    }
+
+    @Override
+    public void glTexParameteri(int target, int pname, int param)
+    {
+        record(GlCall.TEX_PARAMETER_I);
+    }
+
+    @Override
+    public void glUniform1f(int location, float x)
+    {
+        record(GlCall.UNIFORM_1F);
+    }
+
+    @Override
+    public void glUniform1i(int location, int x)
+    {
+        record(GlCall.UNIFORM_1I);
+    }
+
+    @Override
+    public void glUniform2f(int location, float x, float y)
+    {
+        record(GlCall.UNIFORM_2F);
+    }
+
+    @Override
+    public void glUniform4f(int location, float x, float y, float z, float w)
+    {
+        record(GlCall.UNIFORM_4F);
+    }
+
+    @Override
+    public void glUniform4fv(int location, int count, float[] v, int offset)
+    {
+        record(GlCall.UNIFORM_4FV);
+    }
+
+    @Override
+    public void glUniformMatrix4fv(int location, int count, boolean transpose, float[] value, int offset)
+    {
+        record(GlCall.UNIFORM_MATRIX_4FV);
+    }
+
+    @Override
+    public void glUseProgram(int program)
+    {
+        record(GlCall.USE_PROGRAM);
+    }
+
+    @Override
+    public void glVertexAttribPointer(int index, int size, int type, boolean normalized, int stride, int offset)
+    {
+        record(GlCall.VERTEX_ATTRIB_POINTER);
+    }
+
+    @Override
+    public void glVertexAttribPointer(int index, int size, int type, boolean normalized, int stride, Buffer ptr)
+    {
+        record(GlCall.VERTEX_ATTRIB_POINTER);
+    }
+
+    @Override
+    public void glViewport(int x, int y, int width, int height)
+    {
+        record(GlCall.VIEWPORT);
+    }
+}
@@ -0,0 +1,121 @@
+package rd.vehicle;
+
+import java.io.IOException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Passes everything on to another link, and while a SessionRecorder is set
+ * records the commands written, the bytes read and the state changes.
+ * Recording stops by itself if the file fails.
+ */
+public class RecordingVehicleLink implements VehicleLink, VehicleLink.Listener
+{
+    private static final Logger log = Logger.getLogger("session");
+
+    private final VehicleLink mLink;
+    private volatile Listener mListener;
+    private volatile SessionRecorder mRecorder;
+
+    public RecordingVehicleLink(VehicleLink link)
+    {
+        mLink = link;
+        link.setListener(this);
+    }
+
+    /** Start recording into the recorder, or stop with null. The caller closes the recorder. */
+    public void setRecorder(SessionRecorder recorder)
+    {
+        mRecorder = recorder;
+    }
+
+    public SessionRecorder getRecorder()
+    {
+        return mRecorder;
+    }
+
+    private void record(int kind, byte[] buffer, int offset, int length)
+    {
+        SessionRecorder recorder = mRecorder;
+        if (recorder == null) return;
+        try {
+            recorder.record(kind, buffer, offset, length);
+        } catch (IOException e) {
+            failed(e);
+        }
+    }
+
+    private void failed(IOException e)
+    {
+        log.log(Level.SEVERE, "recording stopped", e);
+        mRecorder = null;
+    }
+
+    @Override
+    public void setListener(Listener listener)
+    {
+        mListener = listener;
+    }
+
+    @Override
+    public void onStateChanged(int state)
+    {
+        SessionRecorder recorder = mRecorder;
+        if (recorder != null) {
+            try {
+                recorder.record(SessionRecorder.STATE, state);
+            } catch (IOException e) {
+                failed(e);
+            }
+        }
+        Listener l = mListener;
+        if (l != null) l.onStateChanged(state);
+    }
+
+    @Override
+    public void onRead(byte[] buffer, int offset, int length)
+    {
+        record(SessionRecorder.READ, buffer, offset, length);
+        Listener l = mListener;
+        if (l != null) l.onRead(buffer, offset, length);
+    }
+
+    @Override
+    public void connect(String address)
+    {
+        mLink.connect(address);
+    }
+
+    @Override
+    public void stop()
+    {
+        mLink.stop();
+    }
+
+    @Override
+    public int getState()
+    {
+        return mLink.getState();
+    }
+
+    @Override
+    public void write(byte[] buffer, int offset, int length)
+    {
+        record(SessionRecorder.WRITE, buffer, offset, length);
+        mLink.write(buffer, offset, length);
+    }
+
+    @Override
+    public void writeLatest(byte[] buffer, int offset, int length, long originNs)
+    {
+        record(SessionRecorder.LATEST, buffer, offset, length);
+        mLink.writeLatest(buffer, offset, length, originNs);
+    }
+
+    @Override
+    public void writeUrgent(byte[] buffer, int offset, int length, long originNs)
+    {
+        record(SessionRecorder.URGENT, buffer, offset, length);
+        mLink.writeUrgent(buffer, offset, length, originNs);
+    }
+}
@@ -0,0 +1,29 @@
+package rd.vehicle;
+
+/**
+ * What the renderer needs of the figures to draw a frame: a transform and
+ * a color for each. Captured on the UI thread, where the figures change,
+ * and read on the GL thread.
+ */
+final class RenderState
+{
+    final int count;
+    final float[] transforms;
+    final float[] colors;
+
+    RenderState(int count)
+    {
+        this.count = count;
+        transforms = new float[16 * count];
+        colors = new float[4 * count];
+    }
+
+    void capture(Figure[] figs)
+    {
+        for (int f = 0; f < count; f++)
+        {
+            System.arraycopy(figs[f].transform(), 0, transforms, 16 * f, 16);
+            System.arraycopy(figs[f].color(), 0, colors, 4 * f, 4);
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package rd.vehicle;
+
+/**
+ * The last capacity() values of a series, in a float array that is
+ * written in a circle. Samples are numbered from 0 in the order they are
+ * added; sample i lives at index i % capacity(). Adding a sample does not
+ * allocate.
+ */
+public class SampleRing
+{
+    private final float[] values;
+    private long written = 0;
+
+    public SampleRing(int capacity)
+    {
+        values = new float[capacity];
+    }
+
+    public int capacity()
+    {
+        return values.length;
+    }
+
+    public synchronized void add(float value)
+    {
+        values[(int)(written % values.length)] = value;
+        written++;
+    }
+
+    /** Number of samples ever added, which is the number of the next one */
+    public synchronized long getWritten()
+    {
+        return written;
+    }
+
+    /** The newest sample, or NaN if there is none */
+    public synchronized float last()
+    {
+        if (written == 0) return Float.NaN;
+        return values[(int)((written - 1) % values.length)];
+    }
+
+    /**
+     * Copy the samples added since a given one into a mirror of the ring
+     * @param from  Number of the first sample wanted
+     * @param dst  At least capacity() long; sample i goes to dst[i % capacity()]
+     * @return The number of samples written so far. Samples from
+     *         max(from, return - capacity()) up to it were copied.
+     */
+    public synchronized long copySince(long from, float[] dst)
+    {
+        long start = Math.max(from, written - values.length);
+        for (long i = start; i < written; i++)
+        {
+            int slot = (int)(i % values.length);
+            dst[slot] = values[slot];
+        }
+        return written;
+    }
+
+    public synchronized void clear()
+    {
+        written = 0;
+    }
+}
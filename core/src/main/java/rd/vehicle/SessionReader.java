@@ -0,0 +1,99 @@
+package rd.vehicle;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Reads the records of a SessionRecorder file in order. Stops at the end of
+ * the file or at the first record not completely written, as the last one
+ * of an app that was killed may be.
+ */
+public final class SessionReader
+{
+    private final MappedByteBuffer mMap;
+    private final int segment;
+    private final long startNs, startMs;
+
+    private int kind;
+    private long timeNs;
+    private byte[] data = new byte[256];
+    private int length;
+
+    public SessionReader(File file) throws IOException
+    {
+        RandomAccessFile in = new RandomAccessFile(file, "r");
+        try
+        {
+            if (in.length() < SessionRecorder.FILE_HEADER) throw new IOException("not a session");
+            mMap = in.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, in.length());
+        } finally
+        {
+            in.close(); // the mapping stays valid
+        }
+        if (mMap.getInt() != SessionRecorder.MAGIC) throw new IOException("not a session");
+        int version = mMap.getInt();
+        if (version != SessionRecorder.VERSION) throw new IOException("session version " + version + " is not supported");
+        segment = mMap.getInt();
+        startNs = mMap.getLong();
+        startMs = mMap.getLong();
+    }
+
+    /** System.nanoTime() when recording started */
+    public long getStartNs() { return startNs; }
+
+    /** System.currentTimeMillis() when recording started */
+    public long getStartMs() { return startMs; }
+
+    /**
+     * Move to the next record
+     * @return false at the end
+     */
+    public boolean next()
+    {
+        while (true)
+        {
+            int at = mMap.position();
+            int end = (int)Math.min(mMap.limit(), (at / (long)segment + 1) * segment);
+            if (end - at < SessionRecorder.HEAD)
+            {
+                // The rest of the segment is too short for a record
+                if (end == mMap.limit()) return false;
+                mMap.position(end);
+                continue;
+            }
+            int head = mMap.getInt();
+            kind = head >>> 24;
+            length = head & SessionRecorder.MAX_LENGTH;
+            if (kind == SessionRecorder.SKIP)
+            {
+                mMap.position(end);
+                continue;
+            }
+            if (head == 0 || end - mMap.position() < 8 + length) return false;
+            timeNs = mMap.getLong();
+            if (data.length < length) data = new byte[Math.max(length, 2 * data.length)];
+            mMap.get(data, 0, length);
+            return true;
+        }
+    }
+
+    /** One of the kinds of SessionRecorder */
+    public int kind() { return kind; }
+
+    /** System.nanoTime() of the record */
+    public long timeNs() { return timeNs; }
+
+    /** The bytes of the record, only valid until the next one is read */
+    public byte[] data() { return data; }
+
+    public int length() { return length; }
+
+    /** Back to the first record */
+    public void rewind()
+    {
+        mMap.position(SessionRecorder.FILE_HEADER);
+    }
+}
@@ -0,0 +1,116 @@
+package rd.vehicle;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Appends what goes over the link to a memory-mapped file, so a run can be
+ * looked at or replayed by SessionReplay later. A record is a copy into
+ * the mapping, without a system call; the file is mapped a segment at a
+ * time, and mapping the next one is the only slow step, once per SEGMENT
+ * bytes. What was recorded is in the file even if the app is killed.
+ *
+ * The file holds:
+ * - int magic, int version, int segment size, long nanoTime and long
+ *   currentTimeMillis at the start;
+ * - records, each an int head (kind in bits 24-31, length in 0-23), the
+ *   long nanoTime it was recorded at and length bytes. The head is written
+ *   last, so a record is complete once it is not 0. A record does not span
+ *   segments: the rest of a segment is skipped by a SKIP record, or left
+ *   as it is when shorter than a head.
+ */
+public final class SessionRecorder
+{
+    public static final int MAGIC = 0x56534553; // "VSES"
+    public static final int VERSION = 1;
+    public static final int SEGMENT = 4 << 20; // bytes
+
+    // What a record holds
+    public static final int SKIP = 1;     // nothing, to the end of the segment
+    public static final int WRITE = 2;    // bytes of VehicleLink.write()
+    public static final int LATEST = 3;   // bytes of VehicleLink.writeLatest(), a velocity command
+    public static final int URGENT = 4;   // bytes of VehicleLink.writeUrgent(), a brake command
+    public static final int READ = 5;     // bytes read from the vehicle, telemetry
+    public static final int STATE = 6;    // one byte, the new state of the link
+
+    static final int FILE_HEADER = 28;
+    static final int HEAD = 4 + 8;
+    static final int MAX_LENGTH = 0xffffff;
+
+    private final RandomAccessFile mFile;
+    private final FileChannel mChannel;
+    private MappedByteBuffer mSegment;
+    private long mSegmentStart = 0;
+    private long mRecorded = 0;
+    private boolean closed = false;
+    private final byte[] mByte = new byte[1];
+
+    public SessionRecorder(File file) throws IOException
+    {
+        mFile = new RandomAccessFile(file, "rw");
+        mFile.setLength(0);
+        mChannel = mFile.getChannel();
+        mSegment = mChannel.map(FileChannel.MapMode.READ_WRITE, 0, SEGMENT);
+        mSegment.putInt(MAGIC).putInt(VERSION).putInt(SEGMENT);
+        mSegment.putLong(System.nanoTime()).putLong(System.currentTimeMillis());
+    }
+
+    /** Append a record, if still open. Any thread may record. */
+    public synchronized void record(int kind, byte[] buffer, int offset, int length) throws IOException
+    {
+        if (closed) return;
+        if (length > MAX_LENGTH || HEAD + length > SEGMENT) throw new IllegalArgumentException("record of " + length + " bytes");
+        if (mSegment.remaining() < HEAD + length) nextSegment();
+        int at = mSegment.position();
+        mSegment.position(at + 4);
+        mSegment.putLong(System.nanoTime());
+        mSegment.put(buffer, offset, length);
+        mSegment.putInt(at, kind << 24 | length);
+        mRecorded++;
+    }
+
+    /** Append a record of one byte */
+    public synchronized void record(int kind, int value) throws IOException
+    {
+        mByte[0] = (byte)value;
+        record(kind, mByte, 0, 1);
+    }
+
+    private void nextSegment() throws IOException
+    {
+        int rest = mSegment.remaining();
+        if (rest >= 4) mSegment.putInt(mSegment.position(), SKIP << 24 | (rest - 4));
+        mSegmentStart += SEGMENT;
+        mSegment = mChannel.map(FileChannel.MapMode.READ_WRITE, mSegmentStart, SEGMENT);
+    }
+
+    /** Records appended so far */
+    public synchronized long getRecorded()
+    {
+        return mRecorded;
+    }
+
+    /** Bytes of the file in use */
+    public synchronized long length()
+    {
+        return mSegmentStart + mSegment.position();
+    }
+
+    /** Flush the file and cut off the unused end of the last segment */
+    public synchronized void close() throws IOException
+    {
+        if (closed) return;
+        closed = true;
+        mSegment.force();
+        try
+        {
+            mChannel.truncate(mSegmentStart + mSegment.position());
+        } finally
+        {
+            mFile.close();
+        }
+    }
+}
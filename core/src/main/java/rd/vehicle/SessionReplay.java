@@ -0,0 +1,114 @@
+package rd.vehicle;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Sends the commands of a recorded session over a link again, on the same
+ * lane and with the same spacing as they were recorded, or faster by a
+ * factor for stress testing. What the vehicle sent back is not replayed.
+ *
+ * Run with: java rd.vehicle.SessionReplay session.bin [host:port [speed]]
+ * Without an address the records are printed instead.
+ */
+public class SessionReplay
+{
+    private final SessionReader mReader;
+    private final VehicleLink mLink;
+    private final double speed;
+
+    /** @param speed  How many times faster than recorded, or 0 for no waiting at all */
+    public SessionReplay(SessionReader reader, VehicleLink link, double speed)
+    {
+        mReader = reader;
+        mLink = link;
+        this.speed = speed;
+    }
+
+    /**
+     * Send every command, waiting on the calling thread between them
+     * @return The number of commands sent
+     */
+    public int run() throws InterruptedException
+    {
+        mReader.rewind();
+        long firstNs = 0, startNs = 0;
+        int sent = 0;
+        while (mReader.next())
+        {
+            int kind = mReader.kind();
+            if (kind != SessionRecorder.WRITE && kind != SessionRecorder.LATEST && kind != SessionRecorder.URGENT)
+                continue;
+            long now = System.nanoTime();
+            if (sent == 0)
+            {
+                firstNs = mReader.timeNs();
+                startNs = now;
+            } else if (speed > 0)
+            {
+                long dueNs = startNs + (long)((mReader.timeNs() - firstNs) / speed);
+                while ((now = System.nanoTime()) < dueNs)
+                {
+                    LockSupport.parkNanos(dueNs - now);
+                    if (Thread.interrupted()) throw new InterruptedException();
+                }
+            }
+            if (kind == SessionRecorder.LATEST) mLink.writeLatest(mReader.data(), 0, mReader.length(), now);
+            else if (kind == SessionRecorder.URGENT) mLink.writeUrgent(mReader.data(), 0, mReader.length(), now);
+            else mLink.write(mReader.data(), 0, mReader.length());
+            sent++;
+        }
+        return sent;
+    }
+
+    private static final String[] KINDS = {"?", "skip", "write", "latest", "urgent", "read", "state"};
+
+    private static void print(SessionReader reader)
+    {
+        StringBuilder line = new StringBuilder();
+        System.out.println("# recorded at " + reader.getStartMs() + " ms since the epoch");
+        while (reader.next())
+        {
+            int kind = reader.kind();
+            line.setLength(0);
+            line.append(String.format("%12.3f", (reader.timeNs() - reader.getStartNs()) / 1e6)).append(' ')
+                    .append(kind < KINDS.length ? KINDS[kind] : "#" + kind);
+            for (int i = 0; i < reader.length(); i++)
+                line.append(' ').append(String.format("%02x", reader.data()[i] & 0xff));
+            System.out.println(line);
+        }
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException
+    {
+        if (args.length < 1)
+        {
+            System.err.println("usage: java rd.vehicle.SessionReplay session.bin [host:port [speed]]");
+            System.exit(2);
+        }
+        SessionReader reader = new SessionReader(new File(args[0]));
+        if (args.length < 2)
+        {
+            print(reader);
+            return;
+        }
+        TcpVehicleLink link = new TcpVehicleLink();
+        link.connect(args[1]);
+        long deadline = System.currentTimeMillis() + 10000;
+        while (link.getState() != VehicleLink.STATE_CONNECTED)
+        {
+            if (System.currentTimeMillis() > deadline)
+            {
+                System.err.println("could not connect to " + args[1]);
+                System.exit(1);
+            }
+            Thread.sleep(10);
+        }
+        double speed = args.length > 2 ? Double.parseDouble(args[2]) : 1.0;
+        long start = System.nanoTime();
+        int sent = new SessionReplay(reader, link, speed).run();
+        System.out.println(sent + " commands in " + (System.nanoTime() - start) / 1000000L + " ms");
+        link.stop();
+    }
+}
@@ -0,0 +1,103 @@
+package rd.vehicle;
+
+import java.util.HashMap;
+import java.util.logging.Logger;
+
+/**
+ * A linked GL program, shared by everything drawn with the same shader
+ * sources. Attribute and uniform locations are looked up once and kept.
+ *
+ * Program ids belong to the EGL context, so the cache must be cleared when
+ * the context is recreated.
+ */
+final class ShaderProgram
+{
+    // Reaches logcat on the device through java.util.logging
+    private static final Logger log = Logger.getLogger("opengl");
+    private static final HashMap<String, ShaderProgram> cache = new HashMap<String, ShaderProgram>();
+
+    public final int program;
+    private final Gl gl;
+    private final HashMap<String, Integer> locations = new HashMap<String, Integer>();
+
+    /** Get the program for the sources, compiling and linking it on first use */
+    public static ShaderProgram get(Gl gl, String vertexShaderCode, String fragmentShaderCode)
+    {
+        String key = vertexShaderCode + '\0' + fragmentShaderCode;
+        ShaderProgram p = cache.get(key);
+        if (p == null)
+        {
+            p = new ShaderProgram(gl, vertexShaderCode, fragmentShaderCode);
+            cache.put(key, p);
+        }
+        return p;
+    }
+
+    /** Forget all programs. Call when a new EGL context is created. */
+    public static void clearCache()
+    {
+        cache.clear();
+    }
+
+    public int attribLocation(String name)
+    {
+        Integer loc = locations.get(name);
+        if (loc == null)
+        {
+            loc = gl.glGetAttribLocation(program, name);
+            locations.put(name, loc);
+        }
+        return loc;
+    }
+
+    public int uniformLocation(String name)
+    {
+        Integer loc = locations.get(name);
+        if (loc == null)
+        {
+            loc = gl.glGetUniformLocation(program, name);
+            locations.put(name, loc);
+        }
+        return loc;
+    }
+
+    private static int loadShader(Gl gl, int type, String shaderCode)
+    {
+        // create a vertex shader type (Gl.GL_VERTEX_SHADER)
+        // or a fragment shader type (Gl.GL_FRAGMENT_SHADER)
+        int shader = gl.glCreateShader(type);
+        // add the source code to the shader and compile it
+        gl.glShaderSource(shader, shaderCode);
+        gl.glCompileShader(shader);
+
+        int[] compiled = new int[1];
+        gl.glGetShaderiv(shader, Gl.GL_COMPILE_STATUS, compiled, 0);
+        if (compiled[0] == 0)
+        {
+            log.severe("Could not compile shader\n" + gl.glGetShaderInfoLog(shader) + "\n" + shaderCode);
+        }
+
+        return shader;
+    }
+
+    private ShaderProgram(Gl gl, String vertexShaderCode, String fragmentShaderCode)
+    {
+        this.gl = gl;
+        int vertexShader = loadShader(gl, Gl.GL_VERTEX_SHADER, vertexShaderCode);
+        int fragmentShader = loadShader(gl, Gl.GL_FRAGMENT_SHADER, fragmentShaderCode);
+        program = gl.glCreateProgram();
+        gl.glAttachShader(program, vertexShader);
+        gl.glAttachShader(program, fragmentShader);
+        gl.glLinkProgram(program);
+
+        int[] linked = new int[1];
+        gl.glGetProgramiv(program, Gl.GL_LINK_STATUS, linked, 0);
+        if (linked[0] == 0)
+        {
+            log.severe("Could not link program\n" + gl.glGetProgramInfoLog(program));
+        }
+        // The linked program keeps what it needs
+        gl.glDeleteShader(vertexShader);
+        gl.glDeleteShader(fragmentShader);
+    }
+}
@@ -0,0 +1,46 @@
+package rd.vehicle;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A sum that many threads add to without contending: each thread adds to
+ * one of several cells, picked by its id, and a read sums the cells. The
+ * cells are a cache line apart so threads on different cores do not share
+ * one. Neither adding nor reading allocates.
+ */
+public final class StripedCounter
+{
+    private static final int STRIPES = 8; // a power of two, about the number of cores
+    private static final int PAD = 8; // longs per cache line
+
+    private final AtomicLongArray cells = new AtomicLongArray(STRIPES * PAD);
+
+    private static int cell()
+    {
+        long id = Thread.currentThread().getId();
+        return ((int)(id ^ (id >>> 32)) & (STRIPES - 1)) * PAD;
+    }
+
+    public void add(long delta)
+    {
+        cells.getAndAdd(cell(), delta);
+    }
+
+    public void increment()
+    {
+        cells.getAndIncrement(cell());
+    }
+
+    /** The sum, not an atomic snapshot while others add */
+    public long sum()
+    {
+        long sum = 0;
+        for (int i = 0; i < STRIPES; i++) sum += cells.get(i * PAD);
+        return sum;
+    }
+
+    public void reset()
+    {
+        for (int i = 0; i < STRIPES; i++) cells.set(i * PAD, 0);
+    }
+}
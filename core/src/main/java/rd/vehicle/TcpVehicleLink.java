@@ -0,0 +1,216 @@
+package rd.vehicle;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+
+/**
+ * VehicleLink over a TCP socket, for talking to a simulator or a vehicle
+ * behind a WiFi bridge. The address is "host:port".
+ */
+public class TcpVehicleLink implements VehicleLink
+{
+    private static final int CONNECT_TIMEOUT_MS = 5000;
+
+    private volatile Listener mListener;
+    private int mState = STATE_NONE;
+    private Socket mSocket;
+    private OutputStream mOutStream;
+    private Thread mThread;
+
+    public TcpVehicleLink() {}
+
+    /** Wrap a socket that is already connected, e.g. one returned by accept() */
+    public TcpVehicleLink(Socket socket) throws IOException
+    {
+        socket.setTcpNoDelay(true);
+        synchronized (this) {
+            mSocket = socket;
+            mOutStream = socket.getOutputStream();
+            mState = STATE_CONNECTED;
+            startReader(socket);
+        }
+        notifyState(STATE_CONNECTED);
+    }
+
+    @Override
+    public void setListener(Listener listener)
+    {
+        mListener = listener;
+    }
+
+    private void setState(int state)
+    {
+        synchronized (this) {
+            mState = state;
+        }
+        notifyState(state);
+    }
+
+    /**
+     * Tell the listener, outside the lock. mState is set together with
+     * mOutStream, so a write never sees CONNECTED without a stream.
+     */
+    private void notifyState(int state)
+    {
+        Listener l = mListener;
+        if (l != null) l.onStateChanged(state);
+    }
+
+    @Override
+    public synchronized int getState()
+    {
+        return mState;
+    }
+
+    @Override
+    public void connect(String address)
+    {
+        int colon = address.lastIndexOf(':');
+        final String host = address.substring(0, colon);
+        final int port = Integer.parseInt(address.substring(colon + 1));
+        stop();
+        setState(STATE_CONNECTING);
+        synchronized (this) {
+            mThread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Socket socket = new Socket();
+                    try {
+                        socket.setTcpNoDelay(true);
+                        socket.connect(new InetSocketAddress(host, port), CONNECT_TIMEOUT_MS);
+                    } catch (IOException e) {
+                        close(socket);
+                        synchronized (TcpVehicleLink.this) {
+                            // A newer connect() owns the state now
+                            if (mThread != Thread.currentThread()) return;
+                            mThread = null;
+                            mState = STATE_NONE;
+                        }
+                        notifyState(STATE_NONE);
+                        return;
+                    }
+                    boolean connected = false;
+                    synchronized (TcpVehicleLink.this) {
+                        if (mThread != Thread.currentThread()) {
+                            // Stopped while connecting
+                            close(socket);
+                            return;
+                        }
+                        try {
+                            mOutStream = socket.getOutputStream();
+                            mSocket = socket;
+                            connected = true;
+                        } catch (IOException e) {
+                            close(socket);
+                            mThread = null;
+                        }
+                        mState = connected ? STATE_CONNECTED : STATE_NONE;
+                    }
+                    notifyState(connected ? STATE_CONNECTED : STATE_NONE);
+                    if (!connected) return;
+                    readLoop(socket);
+                }
+            }, "TcpConnectThread");
+            mThread.start();
+        }
+    }
+
+    private void startReader(final Socket socket)
+    {
+        mThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                readLoop(socket);
+            }
+        }, "TcpReadThread");
+        mThread.start();
+    }
+
+    private void readLoop(Socket socket)
+    {
+        byte[] buffer = new byte[1024];
+        try {
+            InputStream in = socket.getInputStream();
+            int bytes;
+            while ((bytes = in.read(buffer)) > 0) {
+                Listener l = mListener;
+                if (l != null) l.onRead(buffer, 0, bytes);
+            }
+        } catch (IOException e) {
+            // Fall through, the connection is gone
+        }
+        boolean lost;
+        synchronized (this) {
+            lost = mSocket == socket;
+            if (lost) {
+                mSocket = null;
+                mOutStream = null;
+                mThread = null;
+                mState = STATE_NONE;
+            }
+        }
+        close(socket);
+        if (lost) notifyState(STATE_NONE);
+    }
+
+    @Override
+    public void stop()
+    {
+        Socket socket;
+        synchronized (this) {
+            socket = mSocket;
+            mSocket = null;
+            mOutStream = null;
+            mThread = null;
+            if (mState == STATE_NONE) return;
+            mState = STATE_NONE;
+        }
+        if (socket != null) close(socket);
+        notifyState(STATE_NONE);
+    }
+
+    /** Writes are not queued, so there is nothing to replace */
+    @Override
+    public void writeLatest(byte[] buffer, int offset, int length, long originNs)
+    {
+        write(buffer, offset, length);
+    }
+
+    /** Writes are not queued, so there is nothing to overtake */
+    @Override
+    public void writeUrgent(byte[] buffer, int offset, int length, long originNs)
+    {
+        write(buffer, offset, length);
+    }
+
+    @Override
+    public void write(byte[] buffer, int offset, int length)
+    {
+        OutputStream out;
+        synchronized (this) {
+            if (mState != STATE_CONNECTED) return;
+            out = mOutStream;
+        }
+        if (out == null) return;
+        try {
+            // Writes from different threads must not interleave
+            synchronized (out) {
+                out.write(buffer, offset, length);
+            }
+        } catch (IOException e) {
+            stop();
+        }
+    }
+
+    private static void close(Socket socket)
+    {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // Nothing left to do
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package rd.vehicle;
+
+/**
+ * State reported by the vehicle in a TELEMETRY frame. Instances are
+ * recycled through a small pool so the read path does not allocate; a
+ * receiver must call recycle() when done with one from obtain().
+ */
+public final class Telemetry
+{
+    private static final int POOL_SIZE = 16;
+    private static final Telemetry[] pool = new Telemetry[POOL_SIZE];
+    private static int poolSize = 0;
+
+    public int seq;
+    public float vLeft, vRight; // m/s
+    public float battery; // V
+    public long receivedNs; // System.nanoTime() on arrival
+
+    /** Take an instance from the pool, or create one if the pool is empty */
+    public static Telemetry obtain()
+    {
+        synchronized (pool) {
+            if (poolSize > 0) {
+                Telemetry t = pool[--poolSize];
+                pool[poolSize] = null;
+                return t;
+            }
+        }
+        return new Telemetry();
+    }
+
+    public void recycle()
+    {
+        synchronized (pool) {
+            if (poolSize < POOL_SIZE) pool[poolSize++] = this;
+        }
+    }
+
+    /** Fill from a TELEMETRY payload */
+    public void parse(int seq, byte[] buffer, int offset)
+    {
+        this.seq = seq;
+        vLeft = (short)((buffer[offset] << 8) | (buffer[offset+1] & 0xff)) / 1000.0f;
+        vRight = (short)((buffer[offset+2] << 8) | (buffer[offset+3] & 0xff)) / 1000.0f;
+        battery = (((buffer[offset+4] & 0xff) << 8) | (buffer[offset+5] & 0xff)) / 1000.0f;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "seq=" + seq + ",vLeft=" + vLeft + ",vRight=" + vRight + ",battery=" + battery;
+    }
+}
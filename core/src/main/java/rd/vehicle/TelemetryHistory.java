@@ -0,0 +1,30 @@
+package rd.vehicle;
+
+/**
+ * Recent telemetry of the vehicle and the link, one SampleRing per
+ * quantity, for the charts.
+ */
+public class TelemetryHistory
+{
+    public static final int CAPACITY = 512; // 5 s at 100 Hz
+
+    public final SampleRing vLeft = new SampleRing(CAPACITY); // m/s
+    public final SampleRing vRight = new SampleRing(CAPACITY); // m/s
+    public final SampleRing battery = new SampleRing(CAPACITY); // V
+    public final SampleRing rtt = new SampleRing(CAPACITY); // ms
+
+    public void add(Telemetry t)
+    {
+        vLeft.add(t.vLeft);
+        vRight.add(t.vRight);
+        battery.add(t.battery);
+    }
+
+    public void clear()
+    {
+        vLeft.clear();
+        vRight.clear();
+        battery.clear();
+        rtt.clear();
+    }
+}
@@ -0,0 +1,182 @@
+package rd.vehicle;
+
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+
+/**
+ * Scrolling line charts of SampleRings. Each series has a VBO twice the
+ * capacity of its ring holding every sample twice, at its slot and at
+ * slot + capacity, so the last capacity() samples are always one
+ * contiguous range and a chart is a single line strip. Every frame only
+ * the samples added since the last frame are uploaded with
+ * glBufferSubData. The x of a vertex comes from a shared static VBO of
+ * slot numbers, shifted in the shader so the newest sample is at the
+ * right edge.
+ */
+final class TelemetryHud
+{
+    public static final int MAX_SERIES = 8;
+
+    private static final String vertexShaderCode =
+            "attribute float aSlot;" +
+            "attribute float aValue;" +
+            "uniform float uOffset;" +
+            "uniform float uScale;" +
+            "uniform vec4 uRect;" +
+            "uniform vec2 uRange;" +
+            "void main() {" +
+            "  float x = (aSlot - uOffset) * uScale;" +
+            "  float y = clamp((aValue - uRange.x) / (uRange.y - uRange.x), 0.0, 1.0);" +
+            "  gl_Position = vec4(mix(uRect.x, uRect.z, x), mix(uRect.y, uRect.w, y), 0.0, 1.0);" +
+            "}";
+
+    private static final String fragmentShaderCode =
+            "precision mediump float;" +
+            "uniform vec4 uColor;" +
+            "void main() {" +
+            "  gl_FragColor = uColor;" +
+            "}";
+
+    private static final class Series
+    {
+        SampleRing ring;
+        int vbo;
+        long uploaded = 0;
+        float left, bottom, right, top; // normalized device coordinates
+        float min, max;
+        float red, green, blue;
+    }
+
+    private final Gl gl;
+    private final int capacity;
+    private final Series[] series = new Series[MAX_SERIES];
+    private int count = 0;
+    private final int slotVbo;
+    private final float[] mirror;
+    private final FloatBuffer staging;
+
+    private final ShaderProgram mProgram;
+    private final int mSlotHandle, mValueHandle, mOffsetHandle, mScaleHandle, mRectHandle, mRangeHandle, mColorHandle;
+
+    /**
+     * Must run on the GL thread
+     * @param capacity  Capacity of every ring charted
+     */
+    public TelemetryHud(Gl gl, int capacity)
+    {
+        this.gl = gl;
+        this.capacity = capacity;
+        mirror = new float[capacity];
+        staging = ByteBuffer.allocateDirect(capacity * 4).order(ByteOrder.nativeOrder()).asFloatBuffer();
+
+        FloatBuffer slots = ByteBuffer.allocateDirect(2 * capacity * 4).order(ByteOrder.nativeOrder()).asFloatBuffer();
+        for (int i = 0; i < 2 * capacity; i++) slots.put(i);
+        slots.position(0);
+        slotVbo = createBuffer(slots, Gl.GL_STATIC_DRAW);
+
+        mProgram = ShaderProgram.get(gl, vertexShaderCode, fragmentShaderCode);
+        mSlotHandle = mProgram.attribLocation("aSlot");
+        mValueHandle = mProgram.attribLocation("aValue");
+        mOffsetHandle = mProgram.uniformLocation("uOffset");
+        mScaleHandle = mProgram.uniformLocation("uScale");
+        mRectHandle = mProgram.uniformLocation("uRect");
+        mRangeHandle = mProgram.uniformLocation("uRange");
+        mColorHandle = mProgram.uniformLocation("uColor");
+        // Only the charts draw lines, so this is set once per context
+        gl.glLineWidth(2.0f);
+    }
+
+    private int createBuffer(FloatBuffer data, int usage)
+    {
+        int[] buffers = new int[1];
+        gl.glGenBuffers(1, buffers, 0);
+        gl.glBindBuffer(Gl.GL_ARRAY_BUFFER, buffers[0]);
+        gl.glBufferData(Gl.GL_ARRAY_BUFFER, data.capacity() * 4, data, usage);
+        gl.glBindBuffer(Gl.GL_ARRAY_BUFFER, 0);
+        return buffers[0];
+    }
+
+    /**
+     * Chart a ring in a rectangle of the screen
+     * @param min  Value at the bottom of the rectangle
+     * @param max  Value at the top
+     */
+    public void add(SampleRing ring, float left, float bottom, float right, float top,
+                    float min, float max, float red, float green, float blue)
+    {
+        if (ring.capacity() != capacity)
+            throw new IllegalArgumentException("ring of " + ring.capacity() + " samples in a HUD of " + capacity);
+        if (count == MAX_SERIES)
+            throw new IllegalArgumentException("at most " + MAX_SERIES + " series");
+        Series s = new Series();
+        s.ring = ring;
+        s.left = left; s.bottom = bottom; s.right = right; s.top = top;
+        s.min = min; s.max = max;
+        s.red = red; s.green = green; s.blue = blue;
+        // Both copies start out as zeros, the buffer is never read beyond what was uploaded
+        s.vbo = createBuffer(ByteBuffer.allocateDirect(2 * capacity * 4).order(ByteOrder.nativeOrder()).asFloatBuffer(),
+                Gl.GL_DYNAMIC_DRAW);
+        series[count++] = s;
+    }
+
+    /** Upload what was added to the ring since the last frame. The VBO must be bound. */
+    private long upload(Series s)
+    {
+        long written = s.ring.copySince(s.uploaded, mirror);
+        if (written < s.uploaded)
+        {
+            // The ring was cleared and starts over
+            s.uploaded = 0;
+            written = s.ring.copySince(0, mirror);
+        }
+        long next = Math.max(s.uploaded, written - capacity);
+        while (next < written)
+        {
+            // At most two runs, before and after the end of the ring
+            int slot = (int)(next % capacity);
+            int n = (int)Math.min(written - next, capacity - slot);
+            staging.clear();
+            staging.put(mirror, slot, n);
+            staging.position(0);
+            gl.glBufferSubData(Gl.GL_ARRAY_BUFFER, slot * 4, n * 4, staging);
+            gl.glBufferSubData(Gl.GL_ARRAY_BUFFER, (slot + capacity) * 4, n * 4, staging);
+            next += n;
+        }
+        s.uploaded = written;
+        return written;
+    }
+
+    public void draw()
+    {
+        gl.glUseProgram(mProgram.program);
+        gl.glUniform1f(mScaleHandle, 1.0f / (capacity - 1));
+
+        gl.glBindBuffer(Gl.GL_ARRAY_BUFFER, slotVbo);
+        gl.glEnableVertexAttribArray(mSlotHandle);
+        gl.glVertexAttribPointer(mSlotHandle, 1, Gl.GL_FLOAT, false, 4, 0);
+        gl.glEnableVertexAttribArray(mValueHandle);
+
+        for (int i = 0; i < count; i++)
+        {
+            Series s = series[i];
+            gl.glBindBuffer(Gl.GL_ARRAY_BUFFER, s.vbo);
+            long written = upload(s);
+            int n = (int)Math.min(written, capacity);
+            if (n < 2) continue;
+            int first = (int)((written - n) % capacity);
+            gl.glVertexAttribPointer(mValueHandle, 1, Gl.GL_FLOAT, false, 4, 0);
+            // The newest sample goes to the right edge, a short series starts further right
+            gl.glUniform1f(mOffsetHandle, first - (capacity - n));
+            gl.glUniform4f(mRectHandle, s.left, s.bottom, s.right, s.top);
+            gl.glUniform2f(mRangeHandle, s.min, s.max);
+            gl.glUniform4f(mColorHandle, s.red, s.green, s.blue, 1.0f);
+            gl.glDrawArrays(Gl.GL_LINE_STRIP, first, n);
+        }
+
+        gl.glDisableVertexAttribArray(mSlotHandle);
+        gl.glDisableVertexAttribArray(mValueHandle);
+        gl.glBindBuffer(Gl.GL_ARRAY_BUFFER, 0);
+    }
+}
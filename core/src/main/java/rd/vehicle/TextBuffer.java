@@ -0,0 +1,93 @@
+package rd.vehicle;
+
+/**
+ * A line of text built from labels and numbers into a fixed char array,
+ * for readouts that change every frame. Unlike StringBuilder, appending a
+ * number does not allocate. Characters beyond the capacity are dropped.
+ */
+final class TextBuffer
+{
+    private static final long[] POW10 = {1, 10, 100, 1000, 10000, 100000, 1000000};
+
+    private final char[] chars;
+    private int length = 0;
+
+    TextBuffer(int capacity)
+    {
+        chars = new char[capacity];
+    }
+
+    public int length() { return length; }
+    public char charAt(int i) { return chars[i]; }
+
+    public TextBuffer clear()
+    {
+        length = 0;
+        return this;
+    }
+
+    public TextBuffer append(char c)
+    {
+        if (length < chars.length) chars[length++] = c;
+        return this;
+    }
+
+    public TextBuffer append(String s)
+    {
+        for (int i = 0; i < s.length(); i++) append(s.charAt(i));
+        return this;
+    }
+
+    /** Append spaces up to the column, to line up what follows */
+    public TextBuffer pad(int column)
+    {
+        while (length < column && length < chars.length) chars[length++] = ' ';
+        return this;
+    }
+
+    public TextBuffer append(long value)
+    {
+        if (value < 0)
+        {
+            append('-');
+            value = -value;
+        }
+        long div = 1;
+        while (value / div >= 10) div *= 10;
+        for (; div > 0; div /= 10) append((char)('0' + value / div % 10));
+        return this;
+    }
+
+    /**
+     * @param decimals  Digits after the point, at most 6
+     * @param width  Pad on the left with spaces to at least this many characters
+     */
+    public TextBuffer append(float value, int decimals, int width)
+    {
+        int start = length;
+        if (Float.isNaN(value) || Float.isInfinite(value))
+            append("--");
+        else
+        {
+            long pow = POW10[decimals];
+            long scaled = Math.round(Math.abs((double)value) * pow);
+            if (value < 0 && scaled != 0) append('-');
+            append(scaled / pow);
+            if (decimals > 0)
+            {
+                append('.');
+                long frac = scaled % pow;
+                for (long div = pow / 10; div > 0; div /= 10) append((char)('0' + frac / div % 10));
+            }
+        }
+        // Shift right to the width
+        int pad = Math.min(width - (length - start), chars.length - length);
+        if (pad > 0)
+        {
+            System.arraycopy(chars, start, chars, start + pad, length - start);
+            for (int i = 0; i < pad; i++) chars[start + i] = ' ';
+            length += pad;
+        }
+        return this;
+    }
+}
@@ -0,0 +1,80 @@
+package rd.vehicle;
+
+/**
+ * Lays out lines of monospaced text as textured quads, two triangles per
+ * glyph with x, y in normalized device coordinates and u, v into a glyph
+ * atlas of COLUMNS x ROWS cells holding the printable ASCII characters.
+ * The vertex array is allocated once and refilled every frame.
+ */
+final class TextLayout
+{
+    public static final char FIRST = ' ', LAST = '~';
+    public static final int COLUMNS = 16, ROWS = (LAST - FIRST + COLUMNS) / COLUMNS;
+    public static final int FLOATS_PER_VERTEX = 4;
+    private static final int FLOATS_PER_GLYPH = 6 * FLOATS_PER_VERTEX;
+
+    private final float cellWidth, cellHeight; // pixels
+    private final float[] vertices;
+    private int glyphs = 0;
+
+    /**
+     * @param cellWidth  Advance of a glyph in pixels
+     * @param cellHeight  Height of a line in pixels
+     */
+    TextLayout(float cellWidth, float cellHeight, int maxGlyphs)
+    {
+        this.cellWidth = cellWidth;
+        this.cellHeight = cellHeight;
+        vertices = new float[maxGlyphs * FLOATS_PER_GLYPH];
+    }
+
+    public float cellWidth() { return cellWidth; }
+    public float cellHeight() { return cellHeight; }
+
+    public void clear()
+    {
+        glyphs = 0;
+    }
+
+    public float[] vertices() { return vertices; }
+    public int vertexCount() { return glyphs * 6; }
+
+    private int put(int i, float x, float y, float u, float v)
+    {
+        vertices[i] = x;
+        vertices[i+1] = y;
+        vertices[i+2] = u;
+        vertices[i+3] = v;
+        return i + FLOATS_PER_VERTEX;
+    }
+
+    /**
+     * Add a line of text. Blanks take room but no quad; characters without
+     * a glyph are drawn as '?'; glyphs beyond the capacity are dropped.
+     * @param x  Left edge in pixels from the left of the viewport
+     * @param y  Top edge in pixels from the top of the viewport
+     */
+    public void add(TextBuffer text, float x, float y, Viewport vp)
+    {
+        float top = vp.toNdcY(y), bottom = vp.toNdcY(y + cellHeight);
+        for (int c = 0; c < text.length(); c++, x += cellWidth)
+        {
+            char ch = text.charAt(c);
+            if (ch == ' ') continue;
+            if (ch < FIRST || ch > LAST) ch = '?';
+            if ((glyphs + 1) * FLOATS_PER_GLYPH > vertices.length) return;
+            int cell = ch - FIRST;
+            float u0 = (float)(cell % COLUMNS) / COLUMNS, u1 = u0 + 1.0f / COLUMNS;
+            float v0 = (float)(cell / COLUMNS) / ROWS, v1 = v0 + 1.0f / ROWS;
+            float left = vp.toNdcX(x), right = vp.toNdcX(x + cellWidth);
+            int i = glyphs * FLOATS_PER_GLYPH;
+            i = put(i, left, top, u0, v0);
+            i = put(i, left, bottom, u0, v1);
+            i = put(i, right, top, u1, v0);
+            i = put(i, right, top, u1, v0);
+            i = put(i, left, bottom, u0, v1);
+            put(i, right, bottom, u1, v1);
+            glyphs++;
+        }
+    }
+}
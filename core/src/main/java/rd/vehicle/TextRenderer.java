@@ -0,0 +1,115 @@
+package rd.vehicle;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+
+/**
+ * Draws a TextLayout in one draw call. The glyph atlas is uploaded once
+ * into an alpha texture; the layout's vertices go into one VBO that is
+ * reused every frame.
+ */
+final class TextRenderer
+{
+    private static final String vertexShaderCode =
+            "attribute vec2 aPosition;" +
+            "attribute vec2 aUv;" +
+            "varying vec2 vUv;" +
+            "void main() {" +
+            "  gl_Position = vec4(aPosition, 0.0, 1.0);" +
+            "  vUv = aUv;" +
+            "}";
+
+    private static final String fragmentShaderCode =
+            "precision mediump float;" +
+            "uniform sampler2D uAtlas;" +
+            "uniform vec4 uColor;" +
+            "varying vec2 vUv;" +
+            "void main() {" +
+            "  gl_FragColor = vec4(uColor.rgb, uColor.a * texture2D(uAtlas, vUv).a);" +
+            "}";
+
+    private static final int STRIDE = TextLayout.FLOATS_PER_VERTEX * 4;
+
+    private final Gl gl;
+    private final int texture;
+    private final int vbo;
+    private final FloatBuffer staging;
+    private final TextLayout mLayout;
+
+    private final ShaderProgram mProgram;
+    private final int mPositionHandle, mUvHandle, mAtlasHandle, mColorHandle;
+
+    /** Must run on the GL thread */
+    public TextRenderer(Gl gl, GlyphAtlas atlas, int maxGlyphs)
+    {
+        this.gl = gl;
+        int[] ids = new int[1];
+        gl.glGenTextures(1, ids, 0);
+        texture = ids[0];
+        gl.glBindTexture(Gl.GL_TEXTURE_2D, texture);
+        gl.glTexParameteri(Gl.GL_TEXTURE_2D, Gl.GL_TEXTURE_MIN_FILTER, Gl.GL_NEAREST);
+        gl.glTexParameteri(Gl.GL_TEXTURE_2D, Gl.GL_TEXTURE_MAG_FILTER, Gl.GL_NEAREST);
+        gl.glTexParameteri(Gl.GL_TEXTURE_2D, Gl.GL_TEXTURE_WRAP_S, Gl.GL_CLAMP_TO_EDGE);
+        gl.glTexParameteri(Gl.GL_TEXTURE_2D, Gl.GL_TEXTURE_WRAP_T, Gl.GL_CLAMP_TO_EDGE);
+        // Rows of the atlas are not padded to 4 bytes
+        gl.glPixelStorei(Gl.GL_UNPACK_ALIGNMENT, 1);
+        gl.glTexImage2D(Gl.GL_TEXTURE_2D, 0, Gl.GL_ALPHA, atlas.width, atlas.height, 0,
+                Gl.GL_ALPHA, Gl.GL_UNSIGNED_BYTE, atlas.pixels);
+        gl.glBindTexture(Gl.GL_TEXTURE_2D, 0);
+
+        mLayout = new TextLayout(atlas.cellWidth, atlas.cellHeight, maxGlyphs);
+        staging = ByteBuffer.allocateDirect(mLayout.vertices().length * 4)
+                .order(ByteOrder.nativeOrder()).asFloatBuffer();
+        gl.glGenBuffers(1, ids, 0);
+        vbo = ids[0];
+        gl.glBindBuffer(Gl.GL_ARRAY_BUFFER, vbo);
+        gl.glBufferData(Gl.GL_ARRAY_BUFFER, staging.capacity() * 4, staging, Gl.GL_DYNAMIC_DRAW);
+        gl.glBindBuffer(Gl.GL_ARRAY_BUFFER, 0);
+
+        mProgram = ShaderProgram.get(gl, vertexShaderCode, fragmentShaderCode);
+        mPositionHandle = mProgram.attribLocation("aPosition");
+        mUvHandle = mProgram.attribLocation("aUv");
+        mAtlasHandle = mProgram.uniformLocation("uAtlas");
+        mColorHandle = mProgram.uniformLocation("uColor");
+        // Only text blends, so this is set once per context. The atlas is on texture unit 0, the default.
+        gl.glBlendFunc(Gl.GL_SRC_ALPHA, Gl.GL_ONE_MINUS_SRC_ALPHA);
+    }
+
+    /** Lay out the text of a frame here, then draw() it */
+    public TextLayout layout()
+    {
+        return mLayout;
+    }
+
+    public void draw(float red, float green, float blue)
+    {
+        int vertexCount = mLayout.vertexCount();
+        if (vertexCount == 0) return;
+        int floats = vertexCount * TextLayout.FLOATS_PER_VERTEX;
+        staging.clear();
+        staging.put(mLayout.vertices(), 0, floats);
+        staging.position(0);
+
+        gl.glUseProgram(mProgram.program);
+        gl.glEnable(Gl.GL_BLEND);
+        gl.glBindTexture(Gl.GL_TEXTURE_2D, texture);
+        gl.glUniform1i(mAtlasHandle, 0);
+        gl.glUniform4f(mColorHandle, red, green, blue, 1.0f);
+
+        gl.glBindBuffer(Gl.GL_ARRAY_BUFFER, vbo);
+        gl.glBufferSubData(Gl.GL_ARRAY_BUFFER, 0, floats * 4, staging);
+        gl.glEnableVertexAttribArray(mPositionHandle);
+        gl.glVertexAttribPointer(mPositionHandle, 2, Gl.GL_FLOAT, false, STRIDE, 0);
+        gl.glEnableVertexAttribArray(mUvHandle);
+        gl.glVertexAttribPointer(mUvHandle, 2, Gl.GL_FLOAT, false, STRIDE, 2 * 4);
+
+        gl.glDrawArrays(Gl.GL_TRIANGLES, 0, vertexCount);
+
+        gl.glDisableVertexAttribArray(mPositionHandle);
+        gl.glDisableVertexAttribArray(mUvHandle);
+        gl.glBindBuffer(Gl.GL_ARRAY_BUFFER, 0);
+        gl.glBindTexture(Gl.GL_TEXTURE_2D, 0);
+        gl.glDisable(Gl.GL_BLEND);
+    }
+}
@@ -0,0 +1,50 @@
+package rd.vehicle;
+
+/**
+ * Running statistics over a stream of durations in nanoseconds.
+ * Keeps count, min, max, mean and standard deviation (Welford's method)
+ * without storing the samples, so recording never allocates.
+ */
+public class TimingStats
+{
+    private long count, min = Long.MAX_VALUE, max = Long.MIN_VALUE;
+    private double mean, m2;
+
+    public synchronized void record(long nanos)
+    {
+        count++;
+        if (nanos < min) min = nanos;
+        if (nanos > max) max = nanos;
+        double delta = nanos - mean;
+        mean += delta / count;
+        m2 += delta * (nanos - mean);
+    }
+
+    public synchronized void reset()
+    {
+        count = 0;
+        min = Long.MAX_VALUE; max = Long.MIN_VALUE;
+        mean = 0; m2 = 0;
+    }
+
+    public synchronized long getCount() { return count; }
+    public synchronized long getMin() { return count==0 ? 0 : min; }
+    public synchronized long getMax() { return count==0 ? 0 : max; }
+    public synchronized double getMean() { return mean; }
+
+    /** Standard deviation of the samples, i.e. the jitter when samples are intervals */
+    public synchronized double getStdDev()
+    {
+        return count<2 ? 0 : Math.sqrt(m2 / (count-1));
+    }
+
+    @Override
+    public synchronized String toString()
+    {
+        return "n=" + count
+                + " min=" + getMin()/1e6 + "ms"
+                + " mean=" + mean/1e6 + "ms"
+                + " max=" + getMax()/1e6 + "ms"
+                + " sd=" + getStdDev()/1e6 + "ms";
+    }
+}
@@ -0,0 +1,79 @@
+package rd.vehicle;
+
+/**
+ * Hands each touch pointer to the control it went down on, so a move is
+ * dispatched to one control instead of every control checking every
+ * pointer, and records the values of all controls into a
+ * ControlSampleQueue after each touch sample. Only used on the UI thread.
+ */
+class TouchRouter
+{
+    static final int MAX_POINTERS = 32; // MotionEvent pointer ids stay below this
+
+    private final FigureControl[] owners = new FigureControl[MAX_POINTERS];
+    private final ControlSampleQueue mSamples;
+    private final float[] values;
+    private FigureControl[] controls;
+
+    TouchRouter(ControlSampleQueue samples)
+    {
+        mSamples = samples;
+        values = new float[samples.channels()];
+    }
+
+    /** Switch to a new set of controls, forgetting the pointers on the old ones */
+    void setControls(FigureControl[] _controls)
+    {
+        if (controls == _controls) return;
+        if (_controls.length != values.length)
+            throw new IllegalArgumentException(_controls.length + " controls for " + values.length + " channels");
+        controls = _controls;
+        for (int id=0; id<MAX_POINTERS; id++) owners[id] = null;
+    }
+
+    private FigureControl owner(int id)
+    {
+        return id >= 0 && id < MAX_POINTERS ? owners[id] : null;
+    }
+
+    void down(int id, float x, float y, Viewport vp)
+    {
+        if (id < 0 || id >= MAX_POINTERS) return;
+        for (FigureControl ctrl : controls)
+        {
+            ctrl.onDown(x, y, vp, id);
+            if (ctrl.isTracking(id))
+            {
+                owners[id] = ctrl;
+                return;
+            }
+        }
+    }
+
+    void move(int id, float x, float y, Viewport vp)
+    {
+        FigureControl ctrl = owner(id);
+        if (ctrl != null) ctrl.onMove(x, y, vp, id);
+    }
+
+    void up(int id)
+    {
+        FigureControl ctrl = owner(id);
+        if (ctrl == null) return;
+        ctrl.onUp(id);
+        owners[id] = null;
+    }
+
+    /** Release every pointer, as for ACTION_CANCEL */
+    void cancel()
+    {
+        for (int id=0; id<MAX_POINTERS; id++) up(id);
+    }
+
+    /** Record the current value of every control, in the order of the controls */
+    void sample(long timeNs)
+    {
+        for (int i=0; i<controls.length; i++) values[i] = controls[i].getVal();
+        mSamples.put(timeNs, values);
+    }
+}
@@ -0,0 +1,91 @@
+package rd.vehicle;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintWriter;
+
+/**
+ * Turns a dump of Tracer into one line of text per event:
+ * milliseconds since the first event, the thread, the event and its arguments.
+ *
+ * Run with: java rd.vehicle.TraceDecoder trace.bin
+ */
+public class TraceDecoder
+{
+    /** @return The number of events decoded */
+    public static int decode(InputStream stream, PrintWriter out) throws IOException
+    {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(stream));
+        if (in.readInt() != Tracer.MAGIC) throw new IOException("not a trace");
+        int version = in.readInt();
+        if (version != Tracer.VERSION) throw new IOException("trace version " + version + " is not supported");
+        long dumpNs = in.readLong();
+        long dumpMs = in.readLong();
+
+        int kinds = in.readInt();
+        String[] names = new String[kinds];
+        String[][] argNames = new String[kinds][];
+        boolean[][] floats = new boolean[kinds][];
+        for (int k = 0; k < kinds; k++)
+        {
+            names[k] = in.readUTF();
+            String args = in.readUTF();
+            argNames[k] = TraceEvent.parseNames(args);
+            floats[k] = TraceEvent.parseFloats(args);
+        }
+
+        int count = in.readInt();
+        long first = 0;
+        StringBuilder line = new StringBuilder();
+        for (int n = 0; n < count; n++)
+        {
+            long time = in.readLong(), head = in.readLong(), packed = in.readLong();
+            if (n == 0)
+            {
+                first = time;
+                out.println("# " + count + " events, the first " + (dumpNs - time) / 1000000L
+                        + " ms before the dump at " + dumpMs + " ms since the epoch");
+            }
+            int kind = (int)(head & 0xffff);
+            int thread = (int)((head >>> 16) & 0xffff);
+            int[] args = {(int)(packed >>> 32), (int)packed, (int)(head >>> 32)};
+
+            line.setLength(0);
+            line.append(String.format("%12.3f", (time - first) / 1e6)).append(" [").append(thread).append("] ");
+            if (kind >= kinds)
+            {
+                line.append("#").append(kind);
+            } else
+            {
+                line.append(names[kind]);
+                for (int i = 0; i < argNames[kind].length; i++)
+                {
+                    line.append(' ').append(argNames[kind][i]).append('=');
+                    if (floats[kind][i]) line.append(Float.intBitsToFloat(args[i]));
+                    else line.append(args[i]);
+                }
+            }
+            out.println(line);
+        }
+        out.flush();
+        return count;
+    }
+
+    public static void main(String[] args) throws IOException
+    {
+        if (args.length < 1)
+        {
+            System.err.println("usage: java rd.vehicle.TraceDecoder trace.bin");
+            System.exit(2);
+        }
+        InputStream in = new FileInputStream(args[0]);
+        try {
+            decode(in, new PrintWriter(System.out));
+        } finally {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package rd.vehicle;
+
+/**
+ * What Tracer can record. Each event has up to three arguments, described
+ * by a list of names; a name ending in ":f" is a float, any other an int.
+ * The descriptions go into every dump, so old dumps stay readable when
+ * events are added.
+ */
+public enum TraceEvent
+{
+    // Touch, on the UI thread
+    CONTROL_DOWN("x:f y:f pointer"),
+    CONTROL_MOVE("x:f y:f pointer"),
+    CONTROL_UP("pointer"),
+    VALID_TOUCH("distanceSq:f radiusSq:f hit"),
+    SPIN_ANGLE("x:f y:f degrees:f"),
+
+    // Commands, on the control loop, scheduler and writer threads
+    COMMAND_SET("v:f w:f brk"),
+    COMMAND_SENT("bytes urgent ageUs"),
+    LINK_WRITE("bytes urgent writeUs"),
+
+    // Messages of BluetoothChatService handled on the UI thread
+    LINK_STATE("state"),
+    TELEMETRY_READ("seq ageUs");
+
+    public static final int MAX_ARGS = 3;
+
+    final String args;
+    private final String[] names;
+    private final boolean[] floats;
+
+    TraceEvent(String args)
+    {
+        this.args = args;
+        names = parseNames(args);
+        floats = parseFloats(args);
+    }
+
+    static String[] parseNames(String args)
+    {
+        String[] names = args.isEmpty() ? new String[0] : args.split(" ");
+        if (names.length > MAX_ARGS)
+            throw new IllegalArgumentException("more than " + MAX_ARGS + " arguments: " + args);
+        for (int i = 0; i < names.length; i++)
+            if (names[i].endsWith(":f")) names[i] = names[i].substring(0, names[i].length() - 2);
+        return names;
+    }
+
+    static boolean[] parseFloats(String args)
+    {
+        String[] names = args.isEmpty() ? new String[0] : args.split(" ");
+        boolean[] floats = new boolean[names.length];
+        for (int i = 0; i < names.length; i++) floats[i] = names[i].endsWith(":f");
+        return floats;
+    }
+
+    public int argCount()
+    {
+        return names.length;
+    }
+
+    public String argName(int i)
+    {
+        return names[i];
+    }
+
+    public boolean isFloat(int i)
+    {
+        return floats[i];
+    }
+}
@@ -0,0 +1,176 @@
+package rd.vehicle;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Records TraceEvents into a preallocated ring, for the hot paths that
+ * must not format strings for logcat. Recording takes no lock and does not
+ * allocate; any thread may record. Once the ring is full the oldest events
+ * are overwritten.
+ *
+ * dump() writes the ring in a compact binary form that TraceDecoder turns
+ * back into text:
+ * - int magic, int version, long nanoTime and long currentTimeMillis at the dump;
+ * - int number of event kinds, then for each its name and arguments as UTF;
+ * - int number of records, then for each the long timestamp, the long
+ *   head (kind in bits 0-15, thread in 16-31, third argument in 32-63)
+ *   and the long holding the first argument in its high and the second in
+ *   its low 32 bits. Floats are stored as their raw int bits.
+ */
+public final class Tracer
+{
+    public static final int MAGIC = 0x56545243; // "VTRC"
+    public static final int VERSION = 1;
+    public static final int DEFAULT_CAPACITY = 8192; // events
+
+    private static final int STRIDE = 3; // longs per record
+
+    private static final Tracer sGlobal = new Tracer(DEFAULT_CAPACITY);
+
+    private final int mask;
+    // Written with lazySet and read with get, so the stores and loads cannot move past those of seqs
+    private final AtomicLongArray records;
+    // Sequence number + 1 of the record in each slot, 0 while it is being written
+    private final AtomicLongArray seqs;
+    private final AtomicLong next = new AtomicLong();
+    private volatile boolean enabled = true;
+
+    /** @param capacity  Events kept, rounded up to a power of two */
+    public Tracer(int capacity)
+    {
+        int size = Integer.highestOneBit(Math.max(1, capacity - 1)) << 1;
+        mask = size - 1;
+        records = new AtomicLongArray(size * STRIDE);
+        seqs = new AtomicLongArray(size);
+    }
+
+    /** The tracer the app's hot paths record into */
+    public static Tracer get()
+    {
+        return sGlobal;
+    }
+
+    public static void event(TraceEvent e)
+    {
+        sGlobal.record(e, 0, 0, 0);
+    }
+
+    public static void event(TraceEvent e, int a)
+    {
+        sGlobal.record(e, a, 0, 0);
+    }
+
+    public static void event(TraceEvent e, int a, int b)
+    {
+        sGlobal.record(e, a, b, 0);
+    }
+
+    public static void event(TraceEvent e, int a, int b, int c)
+    {
+        sGlobal.record(e, a, b, c);
+    }
+
+    public static void event(TraceEvent e, float a, float b)
+    {
+        sGlobal.record(e, Float.floatToRawIntBits(a), Float.floatToRawIntBits(b), 0);
+    }
+
+    public static void event(TraceEvent e, float a, float b, int c)
+    {
+        sGlobal.record(e, Float.floatToRawIntBits(a), Float.floatToRawIntBits(b), c);
+    }
+
+    public static void event(TraceEvent e, float a, float b, float c)
+    {
+        sGlobal.record(e, Float.floatToRawIntBits(a), Float.floatToRawIntBits(b), Float.floatToRawIntBits(c));
+    }
+
+    /** Record an event with its arguments as they are stored, floats as raw int bits */
+    public void record(TraceEvent e, int a, int b, int c)
+    {
+        if (!enabled) return;
+        long timeNs = System.nanoTime();
+        long n = next.getAndIncrement();
+        int slot = (int)n & mask;
+        seqs.set(slot, 0);
+        int i = slot * STRIDE;
+        records.lazySet(i, timeNs);
+        records.lazySet(i+1, ((long)c << 32) | ((Thread.currentThread().getId() & 0xffff) << 16) | e.ordinal());
+        records.lazySet(i+2, ((long)a << 32) | (b & 0xffffffffL));
+        seqs.lazySet(slot, n + 1);
+    }
+
+    public void setEnabled(boolean enabled)
+    {
+        this.enabled = enabled;
+    }
+
+    public boolean isEnabled()
+    {
+        return enabled;
+    }
+
+    public int capacity()
+    {
+        return mask + 1;
+    }
+
+    /** Events recorded so far, including those overwritten */
+    public long getRecorded()
+    {
+        return next.get();
+    }
+
+    /** Forget all events */
+    public synchronized void clear()
+    {
+        for (int slot = 0; slot <= mask; slot++) seqs.set(slot, 0);
+        next.set(0);
+    }
+
+    /**
+     * Write the events in the ring, oldest first. Recording goes on
+     * meanwhile; an event overwritten while it is copied is left out.
+     */
+    public synchronized void dump(OutputStream stream) throws IOException
+    {
+        long end = next.get();
+        long start = Math.max(0, end - capacity());
+        long[] copy = new long[(int)(end - start) * STRIDE];
+        int count = 0;
+        for (long n = start; n < end; n++)
+        {
+            int slot = (int)n & mask;
+            if (seqs.get(slot) != n + 1) continue;
+            int i = slot * STRIDE;
+            long time = records.get(i), head = records.get(i+1), args = records.get(i+2);
+            // Still the same record after the copy, so nothing tore it
+            if (seqs.get(slot) != n + 1) continue;
+            copy[count * STRIDE] = time;
+            copy[count * STRIDE + 1] = head;
+            copy[count * STRIDE + 2] = args;
+            count++;
+        }
+
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream));
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeLong(System.nanoTime());
+        out.writeLong(System.currentTimeMillis());
+        TraceEvent[] kinds = TraceEvent.values();
+        out.writeInt(kinds.length);
+        for (TraceEvent kind : kinds)
+        {
+            out.writeUTF(kind.name());
+            out.writeUTF(kind.args);
+        }
+        out.writeInt(count);
+        for (int i = 0; i < count * STRIDE; i++) out.writeLong(copy[i]);
+        out.flush();
+    }
+}
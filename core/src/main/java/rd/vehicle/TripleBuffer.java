@@ -0,0 +1,54 @@
+package rd.vehicle;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Passes the latest version of some state from one writer thread to one
+ * reader thread without locks. The writer fills back() and publish()es it;
+ * the reader's acquire() returns the latest published buffer, or the one
+ * it already holds if nothing new was published. Neither thread ever
+ * waits for the other, and neither sees a buffer while the other one is
+ * using it, so the reader never sees half an update.
+ */
+final class TripleBuffer<T>
+{
+    private static final int INDEX = 3, FRESH = 4;
+
+    private final T buffer0, buffer1, buffer2;
+    // The buffer between the two threads, with FRESH set until the reader takes it
+    private final AtomicInteger middle = new AtomicInteger(1);
+    private int back = 0; // only touched by the writer
+    private int front = 2; // only touched by the reader
+
+    TripleBuffer(T buffer0, T buffer1, T buffer2)
+    {
+        this.buffer0 = buffer0;
+        this.buffer1 = buffer1;
+        this.buffer2 = buffer2;
+    }
+
+    private T get(int index)
+    {
+        return index == 0 ? buffer0 : index == 1 ? buffer1 : buffer2;
+    }
+
+    /** The buffer the writer may fill */
+    T back()
+    {
+        return get(back);
+    }
+
+    /** Make the back buffer the latest one and get a new back buffer */
+    void publish()
+    {
+        back = middle.getAndSet(back | FRESH) & INDEX;
+    }
+
+    /** The latest published buffer. It stays valid until the next acquire() */
+    T acquire()
+    {
+        if ((middle.get() & FRESH) != 0)
+            front = middle.getAndSet(front) & INDEX;
+        return get(front);
+    }
+}
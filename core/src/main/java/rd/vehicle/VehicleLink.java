@@ -0,0 +1,62 @@
+package rd.vehicle;
+
+/**
+ * A byte stream connection to the vehicle. BluetoothChatService is the one
+ * used on the phone; TcpVehicleLink and LoopbackVehicleLink let the command
+ * path run on a plain JVM.
+ */
+public interface VehicleLink
+{
+    // Constants that indicate the current connection state
+    int STATE_NONE = 0;       // we're doing nothing
+    int STATE_LISTEN = 1;     // now listening for incoming connections
+    int STATE_CONNECTING = 2; // now initiating an outgoing connection
+    int STATE_CONNECTED = 3;  // now connected to a remote device
+
+    /**
+     * Callbacks of a link. They are invoked on the link's own threads.
+     */
+    interface Listener
+    {
+        void onStateChanged(int state);
+
+        /** The buffer is only valid during the call */
+        void onRead(byte[] buffer, int offset, int length);
+    }
+
+    void setListener(Listener listener);
+
+    /**
+     * Start connecting to a vehicle. The format of the address depends on
+     * the implementation.
+     */
+    void connect(String address);
+
+    /** Close the connection and stop all threads */
+    void stop();
+
+    int getState();
+
+    /**
+     * Send bytes to the vehicle. Dropped when not connected. The buffer may
+     * be reused by the caller once the call returns.
+     */
+    void write(byte[] buffer, int offset, int length);
+
+    /**
+     * Like write(), but the bytes make any earlier writeLatest() that is
+     * still waiting to be sent obsolete, so the link may drop that one.
+     * Used for velocity commands.
+     * @param originNs  System.nanoTime() of the input that caused the bytes,
+     *                  for latency accounting, or 0
+     */
+    void writeLatest(byte[] buffer, int offset, int length, long originNs);
+
+    /**
+     * Like write(), but the bytes go out before anything still waiting to be
+     * sent, and a pending writeLatest() is dropped. Used for braking.
+     * @param originNs  System.nanoTime() of the input that caused the bytes,
+     *                  for latency accounting, or 0
+     */
+    void writeUrgent(byte[] buffer, int offset, int length, long originNs);
+}
@@ -0,0 +1,30 @@
+package rd.vehicle;
+
+/**
+ * Size of the GL surface and the mappings between touch coordinates
+ * (pixels, origin at the top left) and normalized device coordinates.
+ * Computed once per surface change; immutable so the UI thread can use the
+ * one published by the GL thread.
+ */
+final class Viewport
+{
+    public final int width, height;
+    private final float ndcPerPixelX, ndcPerPixelY;
+
+    public Viewport(int width, int height)
+    {
+        this.width = width;
+        this.height = height;
+        ndcPerPixelX = 2.0f / width;
+        ndcPerPixelY = 2.0f / height;
+    }
+
+    public float toNdcX(float x) { return x * ndcPerPixelX - 1.0f; }
+    public float toNdcY(float y) { return 1.0f - y * ndcPerPixelY; }
+
+    /** Pixels from the left edge */
+    public float fromNdcX(float x) { return (x + 1.0f) / ndcPerPixelX; }
+
+    /** Pixels from the bottom edge */
+    public float fromNdcYUp(float y) { return (y + 1.0f) / ndcPerPixelY; }
+}
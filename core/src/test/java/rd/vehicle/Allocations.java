@@ -0,0 +1,42 @@
+package rd.vehicle;
+
+import org.junit.Assume;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+import static org.junit.Assert.assertTrue;
+
+/** Checks that a hot path does not allocate, on JVMs that count what each thread allocates */
+final class Allocations
+{
+    /** One step of the code under test */
+    interface Step
+    {
+        void run(int i) throws Exception;
+    }
+
+    private Allocations() {}
+
+    /**
+     * Run the step for i from 0 to iterations twice, the first time to warm
+     * up, and fail if the second time allocated. Skipped where the JVM
+     * cannot count allocations.
+     */
+    static void assertNoneIn(Step step, int iterations) throws Exception
+    {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean)bean;
+        long thread = Thread.currentThread().getId();
+
+        for (int pass = 0; pass < 2; pass++)
+        {
+            long start = threads.getThreadAllocatedBytes(thread);
+            for (int i = 0; i < iterations; i++) step.run(i);
+            long allocated = threads.getThreadAllocatedBytes(thread) - start;
+            // Reading the counter itself costs a few bytes; anything per step would be thousands
+            if (pass == 1) assertTrue("allocated " + allocated + " bytes", allocated < iterations);
+        }
+    }
+}
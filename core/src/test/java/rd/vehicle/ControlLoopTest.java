@@ -0,0 +1,186 @@
+package rd.vehicle;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ControlLoopTest
+{
+    private static final float EPS = 1e-5f;
+
+    /** Counts what Movement hands to the link */
+    private static class CountingLink implements VehicleLink
+    {
+        int latest, urgent;
+        long lastOriginNs;
+
+        @Override public void setListener(Listener listener) {}
+        @Override public void connect(String address) {}
+        @Override public void stop() {}
+        @Override public int getState() { return STATE_CONNECTED; }
+        @Override public void write(byte[] buffer, int offset, int length) {}
+
+        @Override
+        public synchronized void writeLatest(byte[] buffer, int offset, int length, long originNs)
+        {
+            latest++;
+            lastOriginNs = originNs;
+        }
+
+        @Override
+        public synchronized void writeUrgent(byte[] buffer, int offset, int length, long originNs)
+        {
+            urgent++;
+            lastOriginNs = originNs;
+        }
+    }
+
+    /** Puts each write through an OutboundQueue and keeps the stamps taken, like the writer of a link */
+    private static class QueueLink extends CountingLink
+    {
+        final OutboundQueue queue = new OutboundQueue(4, 32);
+        final byte[] taken = new byte[32];
+        final List<Long> stamps = new ArrayList<Long>();
+
+        private void drain()
+        {
+            try
+            {
+                while (queue.getDepth() > 0)
+                {
+                    queue.take(taken);
+                    if (queue.getTakenStampNs() != 0) stamps.add(queue.getTakenStampNs());
+                }
+            } catch (InterruptedException e)
+            {
+                throw new AssertionError(e);
+            }
+        }
+
+        @Override
+        public synchronized void writeLatest(byte[] buffer, int offset, int length, long originNs)
+        {
+            super.writeLatest(buffer, offset, length, originNs);
+            queue.offerLatest(buffer, offset, length, originNs);
+            drain();
+        }
+
+        @Override
+        public synchronized void writeUrgent(byte[] buffer, int offset, int length, long originNs)
+        {
+            super.writeUrgent(buffer, offset, length, originNs);
+            queue.offerUrgent(buffer, offset, length, originNs);
+            drain();
+        }
+    }
+
+    private CountingLink link;
+    private Movement movement;
+    private ControlSampleQueue samples;
+    private ControlLoop loop;
+
+    @Before
+    public void setUp()
+    {
+        link = new CountingLink();
+        movement = new Movement(link);
+        samples = new ControlSampleQueue(64, ControlLoop.CHANNELS);
+        loop = new ControlLoop(samples, movement);
+    }
+
+    private void put(long timeNs, float spin, float move, float brake)
+    {
+        float[] sample = new float[ControlLoop.CHANNELS];
+        sample[ControlLoop.CHANNEL_SPIN] = spin;
+        sample[ControlLoop.CHANNEL_MOVE] = move;
+        sample[ControlLoop.CHANNEL_BRAKE] = brake;
+        samples.put(timeNs, sample);
+    }
+
+    @Test
+    public void tickPublishesTheLatestSample()
+    {
+        assertFalse(loop.tick());
+        put(100, 0.0f, 0.5f, 0);
+        put(200, 0.1f, 1.0f, 0);
+        assertTrue(loop.tick());
+        DriveCommand cmd = movement.getCommand();
+        assertEquals(1.0f, cmd.vBar, EPS);
+        assertEquals(0.1f, cmd.omega, EPS);
+        assertEquals(200, cmd.timestampNs);
+        assertEquals(0, samples.size());
+        movement.getScheduler().stop();
+    }
+
+    @Test
+    public void brakeTapBetweenTicksIsSent()
+    {
+        put(100, 0, 1.0f, 0);
+        put(110, 0, 1.0f, 1);
+        put(120, 0, 1.0f, 0);
+        loop.tick();
+        assertEquals(Movement.BRAKE_REPEAT, link.urgent);
+        assertEquals(0, movement.getCommand().brk);
+        movement.getScheduler().stop();
+    }
+
+    @Test
+    public void heartbeatsAndRepeatsCarryNoOrigin() throws InterruptedException
+    {
+        QueueLink link = new QueueLink();
+        Movement movement = new Movement(link);
+        movement.getScheduler().setHeartbeat(10);
+        movement.setRequire(1.0f, 0.0f, 0, 100);
+        Thread.sleep(100);
+        movement.setRequire(0.0f, 0.0f, 1, 200);
+        Thread.sleep(100);
+        movement.getScheduler().stop();
+        synchronized (link)
+        {
+            // Heartbeats went through the queue, but only the first send of each input has its stamp
+            assertTrue("sent " + link.latest, link.latest > 5);
+            assertEquals(Movement.BRAKE_REPEAT, link.urgent);
+            assertEquals("[100, 200]", link.stamps.toString());
+        }
+    }
+
+    @Test
+    public void heartbeatsAreTimedApart() throws InterruptedException
+    {
+        CommandScheduler scheduler = new CommandScheduler(new Runnable() {
+            @Override
+            public void run() {}
+        }, 5, 50);
+        scheduler.start();
+        Thread.sleep(20);
+        for (int i = 0; i < 10; i++)
+        {
+            scheduler.notifyChanged();
+            Thread.sleep(10);
+        }
+        Thread.sleep(200);
+        scheduler.stop();
+        assertEquals(10, scheduler.getIntervalStats().getCount());
+        assertEquals(10.0, scheduler.getIntervalStats().getMean() / 1e6, 5.0);
+        assertTrue(scheduler.getHeartbeatStats().getCount() >= 3);
+        assertEquals(50.0, scheduler.getHeartbeatStats().getMean() / 1e6, 10.0);
+    }
+
+    @Test
+    public void runsAtTheConfiguredRate() throws InterruptedException
+    {
+        loop.setPeriod(10);
+        loop.start();
+        Thread.sleep(300);
+        loop.stop();
+        TimingStats stats = loop.getIntervalStats();
+        assertTrue(stats.getCount() > 10);
+        assertEquals(10.0, stats.getMean() / 1e6, 5.0);
+    }
+}
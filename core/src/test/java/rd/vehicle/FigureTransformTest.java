@@ -0,0 +1,112 @@
+package rd.vehicle;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class FigureTransformTest
+{
+    private static final float EPS = 1e-5f;
+
+    private LongIndicator mLongIndicator;
+    private SpeedMark mSpeedMark;
+    private BreakButton mBreakButton;
+    private FigureControl[] figCtrls;
+    private Viewport vp;
+
+    @Before
+    public void setUp()
+    {
+        // The same layout as ControlScene
+        mLongIndicator = new LongIndicator();
+        mLongIndicator.setScale(-1.1f, 1.1f, 3.3f, -1.1f);
+        mLongIndicator.setSpin(-90);
+        mSpeedMark = new SpeedMark();
+        mSpeedMark.setScale(-10.0f, 10.0f, 6.0f, -24.0f);
+        mSpeedMark.setSpin(-90);
+        mBreakButton = new BreakButton();
+        mBreakButton.setScale(5.0f, -5.0f, -6.5f, 8.5f);
+        figCtrls = new FigureControl[]
+        {
+                new FigureControlSpin(mLongIndicator),
+                new FigureControlMoveX(mSpeedMark),
+                new FigureControlButton(mBreakButton)
+        };
+        vp = new Viewport(1280, 720);
+    }
+
+    @Test
+    public void transformIsOrthoTimesSpin()
+    {
+        float[] ortho = new float[16], spin = new float[16], expected = new float[16];
+        Mat4.ortho(ortho, -1.1f, 1.1f, -1.1f, 3.3f, -1, 1);
+        Mat4.setRotateZ(spin, -90);
+        Mat4.multiply(expected, ortho, spin);
+        float[] actual = mLongIndicator.transform();
+        for (int i = 0; i < 16; i++)
+            assertEquals("element " + i, expected[i], actual[i], EPS);
+
+        // Rotating by -90 degrees maps the figure's up to the screen's right
+        assertEquals(0.0f, spin[0], EPS);
+        assertEquals(-1.0f, spin[1], EPS);
+        assertEquals(1.0f, spin[4], EPS);
+    }
+
+    @Test
+    public void transformFollowsChanges()
+    {
+        float[] before = mLongIndicator.transform().clone();
+        mLongIndicator.addSpin(30);
+        float[] after = mLongIndicator.transform();
+        boolean changed = false;
+        for (int i = 0; i < 16; i++)
+            if (Math.abs(before[i] - after[i]) > EPS) changed = true;
+        assertTrue(changed);
+        mLongIndicator.addSpin(-30);
+        after = mLongIndicator.transform();
+        for (int i = 0; i < 16; i++)
+            assertEquals(before[i], after[i], EPS);
+    }
+
+    @Test
+    public void touchOnFigureIsValid()
+    {
+        float[] origin = new float[2];
+        mBreakButton.origin(origin);
+        float x = vp.fromNdcX(origin[0]);
+        float y = vp.height - vp.fromNdcYUp(origin[1]);
+        assertTrue(mBreakButton.validTouch(x, y, vp));
+        assertTrue(!mBreakButton.validTouch(vp.width - x, vp.height - y, vp));
+    }
+
+    private void touchAndDraw(int i)
+    {
+        float x = 100 + i % 200, y = 300 + i % 100;
+        for (FigureControl figCtrl : figCtrls)
+        {
+            figCtrl.onDown(x, y, vp, 0);
+            figCtrl.onMove(x + 5, y - 5, vp, 0);
+            figCtrl.onMove(x + 10, y - 10, vp, 0);
+            figCtrl.onUp(0);
+            figCtrl.getVal();
+        }
+        mLongIndicator.addSpin(1);
+        mSpeedMark.addScale(0.01f, 0.01f, 0, 0);
+        mLongIndicator.transform();
+        mSpeedMark.transform();
+        mBreakButton.transform();
+    }
+
+    @Test
+    public void touchAndTransformDoNotAllocate() throws Exception
+    {
+        Allocations.assertNoneIn(new Allocations.Step() {
+            @Override
+            public void run(int i) {
+                touchAndDraw(i);
+            }
+        }, 10000);
+    }
+}
@@ -0,0 +1,82 @@
+package rd.vehicle;
+
+/**
+ * Vehicle side parser of the "%vL vR brk#" text commands written by
+ * LegacyCommandEncoder. Bytes outside a well formed command are ignored.
+ */
+public class LegacyCommandDecoder
+{
+    public interface Listener
+    {
+        /** Wheel speeds in mm/s */
+        void onCommand(int vLeft, int vRight, int brk);
+    }
+
+    private final Listener mListener;
+    private final int[] fields = new int[3];
+    private int field = -1; // -1 while waiting for '%'
+    private int digits = 0;
+    private boolean negative = false;
+
+    private long commands = 0, errors = 0;
+
+    public LegacyCommandDecoder(Listener listener)
+    {
+        mListener = listener;
+    }
+
+    public void feed(byte[] buffer, int offset, int length)
+    {
+        for (int i = offset; i < offset + length; i++)
+        {
+            byte b = buffer[i];
+            if (b == '%')
+            {
+                if (field >= 0) errors++;
+                start();
+                continue;
+            }
+            if (field < 0) continue;
+            if (b >= '0' && b <= '9')
+            {
+                fields[field] = fields[field] * 10 + (b - '0');
+                digits++;
+            } else if (b == '-' && digits == 0 && !negative)
+                negative = true;
+            else if (b == ' ' && digits > 0 && field < 2)
+                next();
+            else if (b == '#' && digits > 0 && field == 2)
+            {
+                next();
+                commands++;
+                field = -1;
+                mListener.onCommand(fields[0], fields[1], fields[2]);
+            } else
+            {
+                errors++;
+                field = -1;
+            }
+        }
+    }
+
+    private void start()
+    {
+        field = 0;
+        fields[0] = fields[1] = fields[2] = 0;
+        digits = 0;
+        negative = false;
+    }
+
+    private void next()
+    {
+        if (negative) fields[field] = -fields[field];
+        field++;
+        digits = 0;
+        negative = false;
+    }
+
+    public long getCommands() { return commands; }
+
+    /** Commands dropped because they were malformed */
+    public long getErrors() { return errors; }
+}
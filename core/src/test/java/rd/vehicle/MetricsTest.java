@@ -0,0 +1,131 @@
+package rd.vehicle;
+
+import org.junit.Test;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class MetricsTest
+{
+    @Test
+    public void stripedCounterSumsAllThreads() throws Exception
+    {
+        final StripedCounter counter = new StripedCounter();
+        Thread[] adders = new Thread[6];
+        for (int a = 0; a < adders.length; a++)
+        {
+            adders[a] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < 100000; i++) counter.increment();
+                    counter.add(5);
+                }
+            });
+            adders[a].start();
+        }
+        for (Thread a : adders) a.join();
+        assertEquals(adders.length * 100005L, counter.sum());
+        counter.reset();
+        assertEquals(0, counter.sum());
+    }
+
+    @Test
+    public void timerKeepsCountTotalAndMax()
+    {
+        Metrics metrics = new Metrics();
+        Metrics.Timer timer = metrics.timer("write");
+        timer.record(3000);
+        timer.record(9000);
+        timer.record(1000);
+        assertEquals(3, timer.getCount());
+        assertEquals(13000, timer.getTotalNs());
+        assertEquals(9000, timer.getMaxNs());
+        assertSame(timer, metrics.timer("write"));
+
+        // The longest of an interval starts over, the longest of all does not
+        assertEquals(9000, metrics.takeIntervalMax(0));
+        timer.record(2000);
+        assertEquals(2000, metrics.takeIntervalMax(0));
+        assertEquals(0, metrics.takeIntervalMax(0));
+        assertEquals(9000, timer.getMaxNs());
+    }
+
+    @Test
+    public void exportsOneLinePerMetric()
+    {
+        Metrics metrics = new Metrics();
+        metrics.counter("sent").add(7);
+        metrics.timer("write").record(2000);
+        metrics.gauge("queue", new Metrics.Gauge() {
+            public long value() { return 1; }
+        });
+        // A new owner of the queue takes over its gauge
+        metrics.gauge("queue", new Metrics.Gauge() {
+            public long value() { return 4; }
+        });
+
+        StringWriter text = new StringWriter();
+        metrics.export(new PrintWriter(text));
+        String[] lines = text.toString().split("\n");
+        assertEquals(4, lines.length);
+        assertEquals("name,kind,value,total_ns,max_ns", lines[0]);
+        assertEquals("sent,counter,7,0,0", lines[1]);
+        assertEquals("write,timer,1,2000,2000", lines[2]);
+        assertEquals("queue,gauge,4,0,0", lines[3]);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void oneNameIsOneKind()
+    {
+        Metrics metrics = new Metrics();
+        metrics.counter("frame");
+        metrics.timer("frame");
+    }
+
+    @Test
+    public void overlayRatesOverTheInterval()
+    {
+        Metrics metrics = new Metrics();
+        Metrics.Counter sent = metrics.counter("sent");
+        MetricsOverlay overlay = new MetricsOverlay(metrics);
+        Viewport vp = new Viewport(1000, 500);
+        TextLayout layout = new TextLayout(10, 20, 256);
+
+        sent.add(10);
+        overlay.layout(layout, 0, 0, vp, 1000000000L);
+        sent.add(50);
+        // Not yet an interval on, so still the first numbers
+        overlay.layout(layout, 0, 0, vp, 1000000000L + MetricsOverlay.INTERVAL_MS * 500000L);
+        overlay.layout(layout, 0, 0, vp, 1000000000L + MetricsOverlay.INTERVAL_MS * 1000000L);
+        // "sent", then the rate "100.0/s" and "total 60": a quad per glyph but the blanks
+        layout.clear();
+        overlay.layout(layout, 0, 0, vp, 1000000000L + MetricsOverlay.INTERVAL_MS * 1000000L);
+        assertEquals(("sent" + "100.0/s" + "total" + "60").length() * 6, layout.vertexCount());
+    }
+
+    @Test
+    public void updatingDoesNotAllocate() throws Exception
+    {
+        Metrics metrics = new Metrics();
+        final Metrics.Counter counter = metrics.counter("sent");
+        final Metrics.Timer timer = metrics.timer("write");
+        final MetricsOverlay overlay = new MetricsOverlay(metrics);
+        final Viewport vp = new Viewport(1000, 500);
+        final TextLayout layout = new TextLayout(10, 20, 256);
+        Allocations.assertNoneIn(new Allocations.Step() {
+            @Override
+            public void run(int i) {
+                counter.increment();
+                timer.record(i);
+                if (i % 100 == 0)
+                {
+                    layout.clear();
+                    overlay.layout(layout, 0, 0, vp, (i + 1) * 10000000L);
+                }
+            }
+        }, 100000);
+    }
+}
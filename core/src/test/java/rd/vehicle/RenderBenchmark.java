@@ -0,0 +1,55 @@
+package rd.vehicle;
+
+/**
+ * CPU cost of a frame of ControlScene on a plain JVM, drawn into a
+ * RecordingGl while telemetry keeps arriving. Measures the render path
+ * itself, not the GPU, and prints the GL calls of a frame by kind.
+ *
+ * Run with: java rd.vehicle.RenderBenchmark [frames] [rounds]
+ */
+public class RenderBenchmark
+{
+    public static void main(String[] args)
+    {
+        int frames = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+        RecordingGl recorder = new RecordingGl(1024);
+        ControlScene scene = new ControlScene(recorder, GlyphAtlas.BLANK);
+        CountingGl gl = scene.getGl();
+        scene.contextCreated();
+        scene.surfaceChanged(1280, 720);
+        Telemetry t = new Telemetry();
+
+        for (int round = 0; round < rounds; round++)
+        {
+            gl.getCpuStats().reset();
+            long start = System.nanoTime();
+            for (int i = 0; i < frames; i++)
+            {
+                // Two reports per frame, 120 Hz telemetry at 60 fps
+                for (int k = 0; k < 2; k++)
+                {
+                    t.vLeft = (float)Math.sin(i * 0.01);
+                    t.vRight = (float)Math.cos(i * 0.01);
+                    t.battery = 8.0f;
+                    scene.getTelemetry().add(t);
+                }
+                scene.getTelemetry().rtt.add(i % 40);
+                scene.publishState();
+                recorder.clear();
+                scene.drawFrame();
+            }
+            long elapsed = System.nanoTime() - start;
+            System.out.println("round " + round + ": " + elapsed / frames + " ns/frame, " + gl);
+        }
+
+        StringBuilder calls = new StringBuilder("calls of the last frame:");
+        for (GlCall call : GlCall.values())
+        {
+            int n = recorder.count(call);
+            if (n > 0) calls.append(' ').append(call).append('=').append(n);
+        }
+        System.out.println(calls);
+    }
+}
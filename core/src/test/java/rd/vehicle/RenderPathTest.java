@@ -0,0 +1,86 @@
+package rd.vehicle;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class RenderPathTest
+{
+    private RecordingGl recorder;
+    private ControlScene scene;
+    private CountingGl gl;
+    private final Telemetry t = new Telemetry();
+
+    @Before
+    public void setUp()
+    {
+        recorder = new RecordingGl();
+        scene = new ControlScene(recorder, GlyphAtlas.BLANK);
+        gl = scene.getGl();
+        scene.contextCreated();
+        scene.surfaceChanged(1280, 720);
+    }
+
+    private void report(int i)
+    {
+        t.vLeft = 0.001f * i;
+        t.vRight = -0.001f * i;
+        t.battery = 8.0f;
+        scene.getTelemetry().add(t);
+        scene.getTelemetry().rtt.add(i % 50);
+    }
+
+    @Test
+    public void steadyFrameIsOneDrawPerLayer()
+    {
+        for (int i = 0; i < 10; i++) report(i);
+        scene.drawFrame();
+        scene.drawFrame();
+        // Figures, four charts, text
+        assertEquals(6, gl.getFrameDrawCalls());
+        assertEquals(0, gl.getFrameCount(GlCall.CREATE_PROGRAM));
+        assertEquals(0, gl.getFrameRedundant());
+    }
+
+    @Test
+    public void onlyNewSamplesAreUploaded()
+    {
+        for (int i = 0; i < 10; i++) report(i);
+        scene.drawFrame();
+        scene.drawFrame();
+        long idle = gl.getFrameBytesUploaded();
+        for (int i = 0; i < 3; i++) report(i);
+        scene.drawFrame();
+        // Three samples of four series, each stored twice
+        assertEquals(idle + 3 * 4 * 2 * 4, gl.getFrameBytesUploaded());
+    }
+
+    @Test
+    public void lostContextIsRebuiltOnTheNextFrame()
+    {
+        scene.drawFrame();
+        long programs = gl.getTotalCount(GlCall.CREATE_PROGRAM);
+        assertTrue(programs > 0);
+        scene.drawFrame();
+        assertEquals(programs, gl.getTotalCount(GlCall.CREATE_PROGRAM));
+        scene.contextCreated();
+        scene.drawFrame();
+        assertEquals(2 * programs, gl.getTotalCount(GlCall.CREATE_PROGRAM));
+    }
+
+    @Test
+    public void steadyFramesDoNotAllocate() throws Exception
+    {
+        Allocations.assertNoneIn(new Allocations.Step() {
+            @Override
+            public void run(int i) {
+                report(i);
+                scene.publishState();
+                scene.drawFrame();
+                recorder.clear();
+            }
+        }, 5000);
+    }
+}
@@ -0,0 +1,44 @@
+package rd.vehicle;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class SampleRingTest
+{
+    @Test
+    public void copiesOnlyNewSamples()
+    {
+        SampleRing ring = new SampleRing(4);
+        float[] mirror = new float[4];
+        ring.add(1);
+        ring.add(2);
+        assertEquals(2, ring.copySince(0, mirror));
+        assertEquals(1.0f, mirror[0], 0);
+        assertEquals(2.0f, mirror[1], 0);
+
+        mirror[0] = mirror[1] = -1;
+        ring.add(3);
+        assertEquals(3, ring.copySince(2, mirror));
+        assertEquals(-1.0f, mirror[0], 0);
+        assertEquals(-1.0f, mirror[1], 0);
+        assertEquals(3.0f, mirror[2], 0);
+    }
+
+    @Test
+    public void keepsTheLastCapacitySamples()
+    {
+        SampleRing ring = new SampleRing(4);
+        float[] mirror = new float[4];
+        for (int i = 0; i < 10; i++) ring.add(i);
+        // Samples 0..5 are gone, 6..9 live at 2, 3, 0, 1
+        assertEquals(10, ring.copySince(0, mirror));
+        assertEquals(8.0f, mirror[0], 0);
+        assertEquals(9.0f, mirror[1], 0);
+        assertEquals(6.0f, mirror[2], 0);
+        assertEquals(7.0f, mirror[3], 0);
+
+        ring.clear();
+        assertEquals(0, ring.getWritten());
+    }
+}
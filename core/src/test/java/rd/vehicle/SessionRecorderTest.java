@@ -0,0 +1,187 @@
+package rd.vehicle;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SessionRecorderTest
+{
+    private static File tempFile() throws IOException
+    {
+        File file = File.createTempFile("session", ".bin");
+        file.deleteOnExit();
+        return file;
+    }
+
+    /** Keeps what was written, with when */
+    private static class CapturingLink implements VehicleLink
+    {
+        final List<String> writes = new ArrayList<String>();
+        final List<Long> times = new ArrayList<Long>();
+
+        @Override
+        public void setListener(Listener listener) {}
+
+        @Override
+        public void connect(String address) {}
+
+        @Override
+        public void stop() {}
+
+        @Override
+        public int getState() { return STATE_CONNECTED; }
+
+        private void add(String lane, byte[] buffer, int offset, int length)
+        {
+            times.add(System.nanoTime());
+            writes.add(lane + " " + new String(buffer, offset, length));
+        }
+
+        @Override
+        public void write(byte[] buffer, int offset, int length) { add("write", buffer, offset, length); }
+
+        @Override
+        public void writeLatest(byte[] buffer, int offset, int length, long originNs) { add("latest", buffer, offset, length); }
+
+        @Override
+        public void writeUrgent(byte[] buffer, int offset, int length, long originNs) { add("urgent", buffer, offset, length); }
+    }
+
+    @Test
+    public void readsBackWhatTheLinkCarried() throws Exception
+    {
+        File file = tempFile();
+        LoopbackVehicleLink[] ends = LoopbackVehicleLink.pair(0, 0);
+        final List<String> vehicle = new ArrayList<String>();
+        ends[1].setListener(new VehicleLink.Listener() {
+            @Override
+            public void onStateChanged(int state) {}
+
+            @Override
+            public void onRead(byte[] buffer, int offset, int length) {
+                synchronized (vehicle) {
+                    vehicle.add(new String(buffer, offset, length));
+                }
+            }
+        });
+        RecordingVehicleLink phone = new RecordingVehicleLink(ends[0]);
+        SessionRecorder recorder = new SessionRecorder(file);
+        phone.setRecorder(recorder);
+        phone.connect("");
+        phone.writeLatest("v1".getBytes(), 0, 2, 0);
+        phone.writeUrgent("b1".getBytes(), 0, 2, 0);
+        ends[1].write("t1".getBytes(), 0, 2);
+        long deadline = System.currentTimeMillis() + 2000;
+        while (recorder.getRecorded() < 4 && System.currentTimeMillis() < deadline) Thread.sleep(1);
+        phone.setRecorder(null);
+        recorder.close();
+        phone.stop();
+        assertEquals(2, vehicle.size());
+
+        SessionReader reader = new SessionReader(file);
+        int[] kinds = {SessionRecorder.STATE, SessionRecorder.LATEST, SessionRecorder.URGENT, SessionRecorder.READ};
+        String[] data = {"\003", "v1", "b1", "t1"};
+        long last = reader.getStartNs();
+        for (int i = 0; i < kinds.length; i++)
+        {
+            assertTrue(reader.next());
+            assertEquals(kinds[i], reader.kind());
+            assertEquals(data[i], new String(reader.data(), 0, reader.length()));
+            assertTrue(reader.timeNs() >= last);
+            last = reader.timeNs();
+        }
+        assertFalse(reader.next());
+    }
+
+    @Test
+    public void recordsAcrossSegments() throws IOException
+    {
+        File file = tempFile();
+        SessionRecorder recorder = new SessionRecorder(file);
+        byte[] frame = new byte[1000];
+        int count = 3 * SessionRecorder.SEGMENT / frame.length;
+        for (int i = 0; i < count; i++)
+        {
+            frame[0] = (byte)i;
+            recorder.record(SessionRecorder.READ, frame, 0, 1 + i % frame.length);
+        }
+        recorder.close();
+        assertEquals(file.length(), recorder.length());
+
+        SessionReader reader = new SessionReader(file);
+        for (int i = 0; i < count; i++)
+        {
+            assertTrue("record " + i, reader.next());
+            assertEquals(1 + i % frame.length, reader.length());
+            assertEquals((byte)i, reader.data()[0]);
+        }
+        assertFalse(reader.next());
+    }
+
+    @Test
+    public void readsARecordingThatWasNotClosed() throws IOException
+    {
+        // As left by an app that was killed: the rest of the segment is zeros
+        File file = tempFile();
+        SessionRecorder recorder = new SessionRecorder(file);
+        recorder.record(SessionRecorder.LATEST, "v1".getBytes(), 0, 2);
+        recorder.record(SessionRecorder.LATEST, "v2".getBytes(), 0, 2);
+
+        SessionReader reader = new SessionReader(file);
+        assertTrue(reader.next());
+        assertTrue(reader.next());
+        assertEquals("v2", new String(reader.data(), 0, reader.length()));
+        assertFalse(reader.next());
+        recorder.close();
+    }
+
+    @Test
+    public void replayKeepsTheOrderAndScalesTheSpacing() throws Exception
+    {
+        File file = tempFile();
+        SessionRecorder recorder = new SessionRecorder(file);
+        recorder.record(SessionRecorder.LATEST, "v1".getBytes(), 0, 2);
+        Thread.sleep(100);
+        recorder.record(SessionRecorder.READ, "t1".getBytes(), 0, 2);
+        recorder.record(SessionRecorder.URGENT, "b1".getBytes(), 0, 2);
+        Thread.sleep(100);
+        recorder.record(SessionRecorder.WRITE, "p1".getBytes(), 0, 2);
+        recorder.close();
+
+        SessionReader reader = new SessionReader(file);
+        CapturingLink link = new CapturingLink();
+        assertEquals(3, new SessionReplay(reader, link, 1.0).run());
+        assertEquals("[latest v1, urgent b1, write p1]", link.writes.toString());
+        long spacing = link.times.get(2) - link.times.get(0);
+        assertTrue("took " + spacing, spacing >= 200000000L);
+
+        // Ten times faster, with the same commands
+        link = new CapturingLink();
+        assertEquals(3, new SessionReplay(reader, link, 10.0).run());
+        assertEquals("[latest v1, urgent b1, write p1]", link.writes.toString());
+        spacing = link.times.get(2) - link.times.get(0);
+        assertTrue("took " + spacing, spacing >= 20000000L && spacing < 150000000L);
+    }
+
+    @Test
+    public void recordingDoesNotAllocate() throws Exception
+    {
+        final SessionRecorder recorder = new SessionRecorder(tempFile());
+        final byte[] frame = new byte[12];
+        Allocations.assertNoneIn(new Allocations.Step() {
+            @Override
+            public void run(int i) throws IOException {
+                frame[0] = (byte)i;
+                recorder.record(SessionRecorder.LATEST, frame, 0, frame.length);
+            }
+        }, 100000);
+        recorder.close();
+    }
+}
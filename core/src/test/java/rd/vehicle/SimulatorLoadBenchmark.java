@@ -0,0 +1,90 @@
+package rd.vehicle;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+
+/**
+ * Sustained command load against VehicleSimulator on a plain JVM. Writes
+ * drive commands at a fixed rate while a LatencyProbe measures round trips
+ * over the same link, then reports what the simulator decoded.
+ *
+ * Run with: java rd.vehicle.SimulatorLoadBenchmark [loopback|tcp] [binary|legacy] [commands/s] [seconds]
+ */
+public class SimulatorLoadBenchmark
+{
+    public static void main(String[] args) throws Exception
+    {
+        String transport = args.length > 0 ? args[0] : "loopback";
+        boolean binary = args.length <= 1 || args[1].equals("binary");
+        int rate = args.length > 2 ? Integer.parseInt(args[2]) : 5000;
+        int seconds = args.length > 3 ? Integer.parseInt(args[3]) : 10;
+
+        VehicleLink phone;
+        VehicleSimulator sim;
+        if (transport.equals("tcp"))
+        {
+            ServerSocket server = new ServerSocket(0);
+            phone = new TcpVehicleLink();
+            phone.connect("127.0.0.1:" + server.getLocalPort());
+            Socket socket = server.accept();
+            sim = new VehicleSimulator(new TcpVehicleLink(socket));
+            server.close();
+            while (phone.getState() != VehicleLink.STATE_CONNECTED) Thread.sleep(1);
+        } else
+        {
+            LoopbackVehicleLink[] pair = LoopbackVehicleLink.pair(0, 0);
+            phone = pair[0];
+            sim = new VehicleSimulator(pair[1]);
+            phone.connect(null);
+        }
+        sim.start();
+
+        final LatencyProbe probe = new LatencyProbe(phone);
+        final FrameDecoder decoder = new FrameDecoder(probe);
+        phone.setListener(new VehicleLink.Listener() {
+            @Override
+            public void onStateChanged(int state) {}
+
+            @Override
+            public void onRead(byte[] buffer, int offset, int length) {
+                decoder.feed(buffer, offset, length);
+            }
+        });
+        if (binary) probe.start(10);
+
+        CommandEncoder encoder = binary ? new BinaryCommandEncoder() : new LegacyCommandEncoder();
+        ByteBuffer frame = ByteBuffer.allocate(encoder.maxFrameSize());
+        TimingStats intervals = new TimingStats();
+        long periodNs = 1000000000L / rate;
+        long total = (long)rate * seconds;
+        long start = System.nanoTime(), next = start, prev = 0;
+        for (long i = 0; i < total; i++)
+        {
+            while (System.nanoTime() < next) { /* spin for an accurate rate */ }
+            long now = System.nanoTime();
+            if (prev != 0) intervals.record(now - prev);
+            prev = now;
+            int v = (int)(i % 4000) - 2000;
+            frame.clear();
+            encoder.encode(frame, v, -v, 0);
+            phone.writeLatest(frame.array(), 0, frame.position(), now);
+            next += periodNs;
+        }
+        long elapsed = System.nanoTime() - start;
+        probe.stop();
+        Thread.sleep(200);
+
+        long decoded = sim.getLegacyCommands() + sim.getBinaryCommands();
+        System.out.println(transport + " " + (binary ? "binary" : "legacy"));
+        System.out.printf("sent %d commands in %.2fs, %.0f/s, interval %s%n",
+                total, elapsed / 1e9, total / (elapsed / 1e9), intervals);
+        System.out.println("simulator " + sim);
+        if (binary) System.out.println("rtt " + probe.getHistogram());
+        sim.stop();
+        phone.stop();
+        if (decoded != total)
+            throw new IllegalStateException("simulator decoded " + decoded + " of " + total + " commands");
+    }
+}
@@ -0,0 +1,71 @@
+package rd.vehicle;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class TextLayoutTest
+{
+    private static String str(TextBuffer text)
+    {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < text.length(); i++) sb.append(text.charAt(i));
+        return sb.toString();
+    }
+
+    @Test
+    public void formatsNumbers()
+    {
+        TextBuffer text = new TextBuffer(32);
+        assertEquals("0", str(text.clear().append(0L)));
+        assertEquals("-120", str(text.clear().append(-120L)));
+        assertEquals(" 1.25", str(text.clear().append(1.249f, 2, 5)));
+        assertEquals("-0.50", str(text.clear().append(-0.5f, 2, 0)));
+        assertEquals("0.0", str(text.clear().append(-0.01f, 1, 0)));
+        assertEquals("  --", str(text.clear().append(Float.NaN, 1, 4)));
+        assertEquals("v 12.3 m/s", str(text.clear().append("v ").append(12.34f, 1, 0).append(" m/s")));
+        // Full, the rest is dropped
+        assertEquals("abcd", str(new TextBuffer(4).append("abcdef")));
+    }
+
+    @Test
+    public void laysOutOneQuadPerGlyph()
+    {
+        Viewport vp = new Viewport(200, 100);
+        TextLayout layout = new TextLayout(10, 20, 8);
+        layout.add(new TextBuffer(8).append("A B"), 0, 0, vp);
+        // The blank takes room but no quad
+        assertEquals(12, layout.vertexCount());
+        float[] v = layout.vertices();
+        // Top left of 'A' at the top left of the viewport
+        assertEquals(-1.0f, v[0], 1e-6f);
+        assertEquals(1.0f, v[1], 1e-6f);
+        int cell = 'A' - TextLayout.FIRST;
+        assertEquals((float)(cell % TextLayout.COLUMNS) / TextLayout.COLUMNS, v[2], 1e-6f);
+        assertEquals((float)(cell / TextLayout.COLUMNS) / TextLayout.ROWS, v[3], 1e-6f);
+        // 'B' starts two cells to the right
+        assertEquals(vp.toNdcX(20), v[6 * TextLayout.FLOATS_PER_VERTEX], 1e-6f);
+
+        layout.clear();
+        layout.add(new TextBuffer(16).append("0123456789"), 0, 0, vp);
+        assertEquals(8 * 6, layout.vertexCount());
+    }
+
+    @Test
+    public void readoutsDoNotAllocate() throws Exception
+    {
+        final Viewport vp = new Viewport(1280, 720);
+        final TextLayout layout = new TextLayout(12, 24, 128);
+        final TextBuffer line = new TextBuffer(64);
+        Allocations.assertNoneIn(new Allocations.Step() {
+            @Override
+            public void run(int i) {
+                layout.clear();
+                line.clear().append("v ").append(i * 0.01f, 2, 5).append(" m/s  w ").append(-i * 0.001f, 2, 5);
+                layout.add(line, 12, 600, vp);
+                line.clear().append("rtt ").append(i % 300 * 0.1f, 1, 5).append(" ms");
+                layout.add(line, 12, 624, vp);
+            }
+        }, 10000);
+    }
+}
@@ -0,0 +1,112 @@
+package rd.vehicle;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TouchRouterTest
+{
+    private static final float EPS = 1e-5f;
+
+    private SpeedMark mSpeedMark;
+    private BreakButton mBreakButton;
+    private FigureControl[] figCtrls;
+    private ControlSampleQueue samples;
+    private TouchRouter router;
+    private Viewport vp;
+
+    @Before
+    public void setUp()
+    {
+        LongIndicator mLongIndicator = new LongIndicator();
+        mLongIndicator.setScale(-1.1f, 1.1f, 3.3f, -1.1f);
+        mLongIndicator.setSpin(-90);
+        mSpeedMark = new SpeedMark();
+        mSpeedMark.setScale(-10.0f, 10.0f, 6.0f, -24.0f);
+        mSpeedMark.setSpin(-90);
+        mBreakButton = new BreakButton();
+        mBreakButton.setScale(5.0f, -5.0f, -6.5f, 8.5f);
+        figCtrls = new FigureControl[]
+        {
+                new FigureControlSpin(mLongIndicator),
+                new FigureControlMoveX(mSpeedMark),
+                new FigureControlButton(mBreakButton)
+        };
+        samples = new ControlSampleQueue(8, figCtrls.length);
+        router = new TouchRouter(samples);
+        router.setControls(figCtrls);
+        vp = new Viewport(1280, 720);
+    }
+
+    /** Screen position of the origin of a figure */
+    private float[] screen(Figure fig)
+    {
+        float[] origin = new float[2];
+        fig.origin(origin);
+        return new float[] {vp.fromNdcX(origin[0]), vp.height - vp.fromNdcYUp(origin[1])};
+    }
+
+    @Test
+    public void pointersStayWithTheirControl()
+    {
+        float[] brake = screen(mBreakButton), speed = screen(mSpeedMark);
+        assertTrue(mSpeedMark.validTouch(speed[0], speed[1], vp));
+
+        router.down(0, brake[0], brake[1], vp);
+        router.down(1, speed[0], speed[1], vp);
+        assertTrue(figCtrls[ControlScene.CTRL_BRAKE].isTracking(0));
+        assertTrue(figCtrls[ControlScene.CTRL_MOVE].isTracking(1));
+        assertEquals(1.0f, figCtrls[ControlScene.CTRL_BRAKE].getVal(), EPS);
+
+        // Sliding the speed finger anywhere leaves the brake pressed
+        router.move(1, speed[0] + 50, speed[1], vp);
+        router.move(1, 0, 0, vp);
+        assertEquals(1.0f, figCtrls[ControlScene.CTRL_BRAKE].getVal(), EPS);
+
+        // Sliding the brake finger off the button releases it
+        router.move(0, 0, 0, vp);
+        assertEquals(0.0f, figCtrls[ControlScene.CTRL_BRAKE].getVal(), EPS);
+
+        router.cancel();
+        for (FigureControl ctrl : figCtrls)
+        {
+            assertTrue(!ctrl.isTracking(0));
+            assertTrue(!ctrl.isTracking(1));
+        }
+    }
+
+    @Test
+    public void everySampleIsTimestamped()
+    {
+        float[] speed = screen(mSpeedMark);
+        router.down(3, speed[0], speed[1], vp);
+        router.sample(1000);
+        for (int i = 1; i <= 4; i++)
+        {
+            router.move(3, speed[0] + 10 * i, speed[1], vp);
+            router.sample(1000 + i);
+        }
+        assertEquals(5, samples.size());
+
+        float[] value = new float[figCtrls.length];
+        float last = Float.NaN;
+        for (int i = 0; i < 5; i++)
+        {
+            assertEquals(1000 + i, samples.poll(value));
+            assertTrue(value[ControlScene.CTRL_MOVE] != last);
+            last = value[ControlScene.CTRL_MOVE];
+        }
+        assertEquals(-1, samples.poll(value));
+    }
+
+    @Test
+    public void oldestSamplesAreOverwritten()
+    {
+        for (int i = 0; i < 10; i++) router.sample(i);
+        assertEquals(8, samples.size());
+        assertEquals(2, samples.getOverwritten());
+        assertEquals(2, samples.poll(new float[figCtrls.length]));
+    }
+}
@@ -0,0 +1,341 @@
+package rd.vehicle;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+
+/**
+ * Latency from a touch to the bytes of the command it causes leaving for
+ * the vehicle, on a plain JVM. Synthetic multi-touch gestures are replayed
+ * in real time through TouchRouter and the FigureControls the way
+ * MyGLSurfaceView.onTouchEvent feeds them, sampled by a running ControlLoop
+ * into Movement, queued in an OutboundQueue and written to a loopback link
+ * by a QueueWriter, the routine the writer thread of BluetoothChatService
+ * runs. VehicleSimulator decodes them at the other end.
+ *
+ * Reports the latency from each touch sample to the end of the first write
+ * of the command made from it, for drive and brake commands, the commands
+ * written per second, and the bytes allocated per gesture on the replaying
+ * thread, which stands for the UI thread, and on all threads together.
+ *
+ * Run with: java rd.vehicle.TouchToWireBenchmark [binary|legacy] [rounds] [control period ms]
+ */
+public class TouchToWireBenchmark
+{
+    private static final long MS = 1000000L;
+    private static final long SAMPLE_NS = 8 * MS; // a 120 Hz touch screen
+
+    /** A recorded touch: pointer actions at times from the start of the gesture */
+    static final class Gesture
+    {
+        static final byte DOWN = 0, MOVE = 1, UP = 2;
+        private static final int MAX_EVENTS = 1024;
+
+        final String name;
+        final long[] atNs = new long[MAX_EVENTS];
+        final byte[] actions = new byte[MAX_EVENTS];
+        final int[] ids = new int[MAX_EVENTS];
+        final float[] xs = new float[MAX_EVENTS], ys = new float[MAX_EVENTS];
+        int size = 0;
+
+        Gesture(String name)
+        {
+            this.name = name;
+        }
+
+        Gesture add(long timeNs, byte action, int id, float x, float y)
+        {
+            // Kept in time order, so pointers moving together can be added one after the other
+            int i = size++;
+            while (i > 0 && atNs[i-1] > timeNs) {
+                atNs[i] = atNs[i-1]; actions[i] = actions[i-1]; ids[i] = ids[i-1]; xs[i] = xs[i-1]; ys[i] = ys[i-1];
+                i--;
+            }
+            atNs[i] = timeNs; actions[i] = action; ids[i] = id; xs[i] = x; ys[i] = y;
+            return this;
+        }
+
+        /** Where a pointer is after a fraction of the way out to the far end and back */
+        private static float outAndBack(float from, float to, long step, long steps)
+        {
+            long half = steps / 2;
+            long out = step <= half ? step : steps - step;
+            return half == 0 ? from : from + (to - from) * out / half;
+        }
+
+        /** A pointer going down at (x0, y0), sliding to (x1, y1) and back, then up */
+        Gesture stroke(int id, long startNs, long durationNs, float x0, float y0, float x1, float y1)
+        {
+            add(startNs, DOWN, id, x0, y0);
+            long steps = durationNs / SAMPLE_NS;
+            for (long s = 1; s < steps; s++)
+                add(startNs + s * SAMPLE_NS, MOVE, id, outAndBack(x0, x1, s, steps), outAndBack(y0, y1, s, steps));
+            return add(startNs + durationNs, UP, id, x0, y0);
+        }
+
+        /** A pointer going down at (x0, y0), turning about (cx, cy) by the given angle and back, then up */
+        Gesture arc(int id, long startNs, long durationNs, float x0, float y0, float cx, float cy, float degrees)
+        {
+            add(startNs, DOWN, id, x0, y0);
+            long steps = durationNs / SAMPLE_NS;
+            for (long s = 1; s < steps; s++)
+            {
+                // Screen y grows downwards, so a positive angle turns clockwise
+                double a = Math.toRadians(outAndBack(0, degrees, s, steps));
+                float x = cx + (float)((x0 - cx) * Math.cos(a) - (y0 - cy) * Math.sin(a));
+                float y = cy + (float)((x0 - cx) * Math.sin(a) + (y0 - cy) * Math.cos(a));
+                add(startNs + s * SAMPLE_NS, MOVE, id, x, y);
+            }
+            return add(startNs + durationNs, UP, id, x0, y0);
+        }
+    }
+
+    /**
+     * Queues what Movement writes and writes it to the link on its own
+     * thread with a QueueWriter, as BluetoothChatService does to its socket.
+     */
+    static final class QueuedLink implements VehicleLink
+    {
+        private final VehicleLink mLink;
+        private final OutboundQueue mQueue = new OutboundQueue(16, 64);
+        private final QueueWriter mWriter = new QueueWriter(mQueue);
+        private Thread mThread;
+
+        QueuedLink(VehicleLink link)
+        {
+            mLink = link;
+        }
+
+        @Override public void setListener(Listener listener) { mLink.setListener(listener); }
+        @Override public void connect(String address) { mLink.connect(address); }
+        @Override public int getState() { return mLink.getState(); }
+        @Override public void write(byte[] buffer, int offset, int length) { mQueue.offer(buffer, offset, length); }
+
+        @Override
+        public void writeLatest(byte[] buffer, int offset, int length, long originNs)
+        {
+            mQueue.offerLatest(buffer, offset, length, originNs);
+        }
+
+        @Override
+        public void writeUrgent(byte[] buffer, int offset, int length, long originNs)
+        {
+            mQueue.offerUrgent(buffer, offset, length, originNs);
+        }
+
+        synchronized void start()
+        {
+            mThread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    writeLoop();
+                }
+            }, "WriteThread");
+            mThread.setDaemon(true);
+            mThread.start();
+        }
+
+        @Override
+        public synchronized void stop()
+        {
+            if (mThread != null) mThread.interrupt();
+            mThread = null;
+            mLink.stop();
+        }
+
+        private void writeLoop()
+        {
+            OutputStream out = new OutputStream() {
+                @Override
+                public void write(int b) {
+                    write(new byte[] {(byte)b}, 0, 1);
+                }
+
+                @Override
+                public void write(byte[] b, int off, int len) {
+                    mLink.write(b, off, len);
+                }
+            };
+            try {
+                mWriter.run(out);
+            } catch (InterruptedException e) {
+                // stopped
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        LatencyHistogram getDriveLatency() { return mWriter.getDriveLatency(); }
+        LatencyHistogram getBrakeLatency() { return mWriter.getBrakeLatency(); }
+        long getWritten() { return mWriter.getWritten(); }
+        long getSuperseded() { return mQueue.getDropped(); }
+    }
+
+    private final ControlScene mScene = new ControlScene(new RecordingGl(), GlyphAtlas.BLANK);
+    private final Viewport vp = new Viewport(1280, 720);
+    private final ControlSampleQueue mSamples = new ControlSampleQueue(256, ControlLoop.CHANNELS);
+    private final TouchRouter mRouter = new TouchRouter(mSamples);
+    private final ControlLoop mControlLoop;
+    private float lastBrake = 0;
+
+    TouchToWireBenchmark(Movement movement, long periodMs)
+    {
+        mRouter.setControls(mScene.figCtrls);
+        mScene.surfaceChanged(vp.width, vp.height);
+        mControlLoop = new ControlLoop(mSamples, movement, periodMs);
+    }
+
+    /** Where on the screen a figure wants to be touched */
+    private float[] touchPoint(int ctrl)
+    {
+        Figure fig = mScene.figs[ctrl];
+        float[] m = fig.transform();
+        float x = Mat4.mapX(m, fig.touchCenterX(), fig.touchCenterY());
+        float y = Mat4.mapY(m, fig.touchCenterX(), fig.touchCenterY());
+        return new float[] {vp.fromNdcX(x), vp.height - vp.fromNdcYUp(y)};
+    }
+
+    private float[] origin(int ctrl)
+    {
+        float[] ndc = new float[2];
+        mScene.figs[ctrl].origin(ndc);
+        return new float[] {vp.fromNdcX(ndc[0]), vp.height - vp.fromNdcYUp(ndc[1])};
+    }
+
+    Gesture[] gestures()
+    {
+        float[] speed = touchPoint(ControlScene.CTRL_MOVE);
+        float[] steer = touchPoint(ControlScene.CTRL_SPIN), pivot = origin(ControlScene.CTRL_SPIN);
+        float[] brake = touchPoint(ControlScene.CTRL_BRAKE);
+        float reach = 0.3f * vp.width / 2; // 0.3 in NDC, inside the travel of the speed mark
+        // Every pointer ends where it went down, so the figures are back for the next gesture
+        return new Gesture[] {
+                new Gesture("drive")
+                        .stroke(0, 0, 600 * MS, speed[0], speed[1], speed[0] + reach, speed[1]),
+                new Gesture("steer")
+                        .arc(0, 0, 600 * MS, steer[0], steer[1], pivot[0], pivot[1], 45),
+                new Gesture("drive and steer")
+                        .stroke(0, 0, 600 * MS, speed[0], speed[1], speed[0] + reach, speed[1])
+                        .arc(1, 40 * MS, 480 * MS, steer[0], steer[1], pivot[0], pivot[1], -30),
+                new Gesture("brake while driving")
+                        .stroke(0, 0, 600 * MS, speed[0], speed[1], speed[0] + reach, speed[1])
+                        .stroke(1, 248 * MS, 152 * MS, brake[0], brake[1], brake[0], brake[1]),
+        };
+    }
+
+    /** Feed one event to the controls, as MyGLSurfaceView.onTouchEvent does */
+    private void dispatch(Gesture g, int i)
+    {
+        switch (g.actions[i])
+        {
+            case Gesture.DOWN: mRouter.down(g.ids[i], g.xs[i], g.ys[i], vp); break;
+            case Gesture.MOVE: mRouter.move(g.ids[i], g.xs[i], g.ys[i], vp); break;
+            case Gesture.UP: mRouter.up(g.ids[i]); break;
+        }
+    }
+
+    /** Play a gesture in real time. Events at the same time make one sample, like one MotionEvent. */
+    void replay(Gesture g)
+    {
+        long start = System.nanoTime();
+        for (int i = 0; i < g.size; )
+        {
+            long due = start + g.atNs[i];
+            while (System.nanoTime() < due) { /* spin for accurate event times */ }
+            long t = g.atNs[i];
+            while (i < g.size && g.atNs[i] == t) dispatch(g, i++);
+            mRouter.sample(System.nanoTime());
+            mScene.publishState();
+            float brake = mScene.figCtrls[ControlScene.CTRL_BRAKE].getVal();
+            if (brake != lastBrake) mControlLoop.wakeUp();
+            lastBrake = brake;
+        }
+    }
+
+    // Null where the JVM cannot count what a thread allocates
+    private static final com.sun.management.ThreadMXBean threads = allocationCounter();
+
+    private static com.sun.management.ThreadMXBean allocationCounter()
+    {
+        java.lang.management.ThreadMXBean mx = ManagementFactory.getThreadMXBean();
+        if (!(mx instanceof com.sun.management.ThreadMXBean)) return null;
+        com.sun.management.ThreadMXBean counter = (com.sun.management.ThreadMXBean)mx;
+        return counter.isThreadAllocatedMemorySupported() ? counter : null;
+    }
+
+    private static long allocatedBytes(boolean allThreads)
+    {
+        if (threads == null) return 0;
+        if (!allThreads) return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+        long sum = 0;
+        for (long bytes : threads.getThreadAllocatedBytes(threads.getAllThreadIds()))
+            if (bytes > 0) sum += bytes;
+        return sum;
+    }
+
+    public static void main(String[] args) throws Exception
+    {
+        boolean binary = args.length <= 0 || args[0].equals("binary");
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        long periodMs = args.length > 2 ? Long.parseLong(args[2]) : ControlLoop.DEFAULT_PERIOD_MS;
+
+        LoopbackVehicleLink[] pair = LoopbackVehicleLink.pair(0, 0);
+        VehicleSimulator sim = new VehicleSimulator(pair[1]);
+        QueuedLink link = new QueuedLink(pair[0]);
+        link.connect(null);
+        link.start();
+        sim.start();
+
+        Movement movement = new Movement(link);
+        movement.setEncoder(binary ? new BinaryCommandEncoder() : new LegacyCommandEncoder());
+        TouchToWireBenchmark bench = new TouchToWireBenchmark(movement, periodMs);
+        bench.mControlLoop.start();
+        Gesture[] gestures = bench.gestures();
+
+        // Once through everything, so the numbers are not of the interpreter
+        for (Gesture g : gestures) bench.replay(g);
+        Thread.sleep(100);
+        link.getDriveLatency().reset();
+        link.getBrakeLatency().reset();
+
+        long uiBytes = 0, allBytes = 0;
+        long written = link.getWritten(), decoded = sim.getLegacyCommands() + sim.getBinaryCommands();
+        long start = System.nanoTime(), busyNs = 0;
+        for (int round = 0; round < rounds; round++)
+        {
+            for (Gesture g : gestures)
+            {
+                // Counting all threads allocates on this one, so it goes outside the count of this thread
+                long all = allocatedBytes(true), ui = allocatedBytes(false), t = System.nanoTime();
+                bench.replay(g);
+                uiBytes += allocatedBytes(false) - ui;
+                // Let the last command of the gesture reach the wire
+                Thread.sleep(periodMs + CommandScheduler.DEFAULT_RATE_LIMIT_MS);
+                busyNs += System.nanoTime() - t;
+                allBytes += allocatedBytes(true) - all;
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        written = link.getWritten() - written;
+        Thread.sleep(100);
+        decoded = sim.getLegacyCommands() + sim.getBinaryCommands() - decoded;
+
+        int count = rounds * gestures.length;
+        System.out.println((binary ? "binary" : "legacy") + ", control period " + periodMs + " ms, "
+                + count + " gestures in " + elapsed / MS + " ms");
+        System.out.println("touch to wire, drive: " + link.getDriveLatency());
+        System.out.println("touch to wire, brake: " + link.getBrakeLatency());
+        System.out.printf("%d commands written, %.0f/s while gesturing, %d superseded in the queue%n",
+                written, written / (busyNs / 1e9), link.getSuperseded());
+        System.out.println("allocated per gesture: " + uiBytes / count + " bytes on the UI thread, "
+                + allBytes / count + " bytes on all threads");
+        System.out.println("simulator " + sim);
+
+        bench.mControlLoop.stop();
+        movement.getScheduler().stop();
+        sim.stop();
+        link.stop();
+        if (decoded < written)
+            throw new IllegalStateException("simulator decoded " + decoded + " of " + written + " commands");
+    }
+}
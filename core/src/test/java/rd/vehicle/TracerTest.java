@@ -0,0 +1,105 @@
+package rd.vehicle;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TracerTest
+{
+    private static String[] decode(Tracer tracer) throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        tracer.dump(bytes);
+        StringWriter text = new StringWriter();
+        TraceDecoder.decode(new ByteArrayInputStream(bytes.toByteArray()), new PrintWriter(text));
+        return text.toString().split("\n");
+    }
+
+    @Test
+    public void dumpDecodesToTheEventsRecorded() throws IOException
+    {
+        Tracer tracer = new Tracer(16);
+        tracer.record(TraceEvent.CONTROL_DOWN, Float.floatToRawIntBits(12.5f), Float.floatToRawIntBits(-3.0f), 2);
+        tracer.record(TraceEvent.COMMAND_SENT, 7, 1, -40);
+        tracer.record(TraceEvent.LINK_WRITE, 12, 0, 35);
+
+        String[] lines = decode(tracer);
+        assertEquals(4, lines.length);
+        assertTrue(lines[0], lines[0].startsWith("# 3 events"));
+        assertTrue(lines[1], lines[1].endsWith("CONTROL_DOWN x=12.5 y=-3.0 pointer=2"));
+        assertTrue(lines[2], lines[2].endsWith("COMMAND_SENT bytes=7 urgent=1 ageUs=-40"));
+        assertTrue(lines[3], lines[3].endsWith("LINK_WRITE bytes=12 urgent=0 writeUs=35"));
+    }
+
+    @Test
+    public void keepsTheNewestEvents() throws IOException
+    {
+        Tracer tracer = new Tracer(4);
+        for (int i = 0; i < 10; i++) tracer.record(TraceEvent.CONTROL_UP, i, 0, 0);
+        assertEquals(10, tracer.getRecorded());
+
+        String[] lines = decode(tracer);
+        assertEquals(5, lines.length);
+        for (int i = 0; i < 4; i++)
+            assertTrue(lines[i+1], lines[i+1].endsWith("CONTROL_UP pointer=" + (6 + i)));
+    }
+
+    @Test
+    public void recordsNothingWhenDisabled() throws IOException
+    {
+        Tracer tracer = new Tracer(4);
+        tracer.setEnabled(false);
+        tracer.record(TraceEvent.CONTROL_UP, 1, 0, 0);
+        assertEquals(0, tracer.getRecorded());
+        assertEquals(1, decode(tracer).length);
+    }
+
+    @Test
+    public void concurrentWritersDoNotTearRecords() throws Exception
+    {
+        final Tracer tracer = new Tracer(256);
+        Thread[] writers = new Thread[4];
+        for (int w = 0; w < writers.length; w++)
+        {
+            final int value = w + 1;
+            writers[w] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    // All three arguments the same, so a torn record shows
+                    for (int i = 0; i < 200000; i++) tracer.record(TraceEvent.COMMAND_SENT, value, value, value);
+                }
+            });
+            writers[w].start();
+        }
+        for (int d = 0; d < 20; d++)
+        {
+            for (String line : decode(tracer))
+            {
+                if (line.startsWith("#")) continue;
+                String v = line.substring(line.indexOf("bytes=") + 6, line.indexOf(" urgent="));
+                assertTrue(line, line.endsWith("bytes=" + v + " urgent=" + v + " ageUs=" + v));
+            }
+        }
+        for (Thread w : writers) w.join();
+    }
+
+    @Test
+    public void recordingDoesNotAllocate() throws Exception
+    {
+        final Tracer tracer = new Tracer(1024);
+        Allocations.assertNoneIn(new Allocations.Step() {
+            @Override
+            public void run(int i) {
+                tracer.record(TraceEvent.CONTROL_MOVE, Float.floatToRawIntBits(i), Float.floatToRawIntBits(-i), i);
+                Tracer.event(TraceEvent.SPIN_ANGLE, i * 0.5f, i * 0.25f, i * 0.1f);
+            }
+        }, 100000);
+    }
+}
@@ -0,0 +1,53 @@
+package rd.vehicle;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TripleBufferTest
+{
+    @Test
+    public void readerSeesLatestPublished()
+    {
+        TripleBuffer<int[]> buffer = new TripleBuffer<int[]>(new int[1], new int[1], new int[1]);
+        buffer.back()[0] = 1;
+        buffer.publish();
+        buffer.back()[0] = 2;
+        buffer.publish();
+        assertEquals(2, buffer.acquire()[0]);
+        // Nothing new: the same buffer again
+        assertEquals(2, buffer.acquire()[0]);
+        buffer.back()[0] = 3;
+        buffer.publish();
+        assertEquals(3, buffer.acquire()[0]);
+    }
+
+    @Test
+    public void readerNeverSeesHalfAnUpdate() throws InterruptedException
+    {
+        final int size = 64, versions = 200000;
+        final TripleBuffer<long[]> buffer = new TripleBuffer<long[]>(new long[size], new long[size], new long[size]);
+        Thread writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                for (long v = 1; v <= versions; v++) {
+                    long[] state = buffer.back();
+                    for (int i = 0; i < size; i++) state[i] = v;
+                    buffer.publish();
+                }
+            }
+        });
+        writer.start();
+        long last = 0;
+        while (last < versions)
+        {
+            long[] state = buffer.acquire();
+            long v = state[0];
+            for (int i = 1; i < size; i++) assertEquals(v, state[i]);
+            assertTrue(v >= last);
+            last = v;
+        }
+        writer.join();
+    }
+}
@@ -0,0 +1,238 @@
+package rd.vehicle;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+
+/**
+ * Stand-in for the vehicle firmware, for testing the protocol without a
+ * car. It reads commands from a VehicleLink in the legacy text format or
+ * in binary frames, whichever the first byte of a connection is, drives
+ * a differential drive model with the same track as Movement, answers
+ * pings and reports telemetry.
+ *
+ * Run with: java rd.vehicle.VehicleSimulator [port]
+ * and connect a TcpVehicleLink to localhost:port.
+ */
+public class VehicleSimulator implements VehicleLink.Listener
+{
+    public static final int DEFAULT_PORT = 7777;
+
+    private static final float TIME_CONSTANT = 0.15f; // s, wheel response to a new speed
+    private static final float MAX_ACCEL = 4.0f; // m/s^2
+    private static final float MAX_BRAKE = 8.0f; // m/s^2
+    private static final long WATCHDOG_NS = 1000000000L; // stop without commands for this long
+    private static final int TICK_HZ = 100;
+    private static final int TELEMETRY_EVERY = 2; // ticks, i.e. 50 Hz
+
+    private final VehicleLink mLink;
+    private final FrameDecoder mFrameDecoder;
+    private final LegacyCommandDecoder mLegacyDecoder;
+    // The format of this connection, set by its first byte
+    private static final int UNKNOWN = 0, LEGACY = 1, BINARY = 2;
+    private volatile int format = UNKNOWN;
+    private final ByteBuffer mReply = ByteBuffer.allocate(Protocol.OVERHEAD + Protocol.MAX_PAYLOAD);
+    private final ByteBuffer mTelemetry = ByteBuffer.allocate(Protocol.TELEMETRY_PAYLOAD);
+    private int replySeq = 0;
+    private Thread mThread;
+
+    // Latest command, guarded by this
+    private float targetLeft, targetRight;
+    private boolean braking;
+    private long lastCommandNs;
+    private long binaryCommands = 0, pings = 0;
+
+    // Model state, only touched by the simulation thread
+    private float vLeft, vRight; // m/s
+    private double x, y, heading; // m, m, rad
+    private float battery = 8.4f; // V
+
+    public VehicleSimulator(VehicleLink link)
+    {
+        mLink = link;
+        mFrameDecoder = new FrameDecoder(new FrameDecoder.Listener() {
+            @Override
+            public void onFrame(int type, int seq, byte[] buffer, int payloadOffset, int payloadLength) {
+                onBinaryFrame(type, seq, buffer, payloadOffset, payloadLength);
+            }
+        });
+        mLegacyDecoder = new LegacyCommandDecoder(new LegacyCommandDecoder.Listener() {
+            @Override
+            public void onCommand(int vLeft, int vRight, int brk) {
+                command(vLeft, vRight, brk != 0);
+            }
+        });
+        link.setListener(this);
+    }
+
+    @Override
+    public void onStateChanged(int state)
+    {
+        if (state == VehicleLink.STATE_CONNECTED)
+        {
+            format = UNKNOWN;
+            return;
+        }
+        command(0, 0, true);
+        if (state == VehicleLink.STATE_NONE) stop();
+    }
+
+    @Override
+    public void onRead(byte[] buffer, int offset, int length)
+    {
+        if (length == 0) return;
+        // Fed to one decoder only, so bytes of one format cannot parse as the other
+        if (format == UNKNOWN) format = buffer[offset] == Protocol.SYNC ? BINARY : LEGACY;
+        if (format == BINARY) mFrameDecoder.feed(buffer, offset, length);
+        else mLegacyDecoder.feed(buffer, offset, length);
+    }
+
+    private void onBinaryFrame(int type, int seq, byte[] buffer, int offset, int length)
+    {
+        switch (type)
+        {
+            case Protocol.TYPE_DRIVE:
+                int left = (short)((buffer[offset] << 8) | (buffer[offset+1] & 0xff));
+                int right = (short)((buffer[offset+2] << 8) | (buffer[offset+3] & 0xff));
+                synchronized (this) {
+                    binaryCommands++;
+                }
+                command(left, right, (buffer[offset+4] & Protocol.FLAG_BRAKE) != 0);
+                break;
+            case Protocol.TYPE_PING:
+                synchronized (this) {
+                    pings++;
+                }
+                reply(Protocol.TYPE_ECHO, seq, buffer, offset, length);
+                break;
+        }
+    }
+
+    private synchronized void command(int left, int right, boolean brk)
+    {
+        targetLeft = left / 1000.0f;
+        targetRight = right / 1000.0f;
+        braking = brk;
+        lastCommandNs = System.nanoTime();
+    }
+
+    private synchronized void reply(byte type, int seq, byte[] payload, int offset, int length)
+    {
+        mReply.clear();
+        mReply.put(Protocol.SYNC);
+        mReply.put(type);
+        mReply.put((byte)seq);
+        mReply.put(payload, offset, length);
+        mReply.put(Protocol.crc8(mReply.array(), 1, mReply.position() - 1));
+        mLink.write(mReply.array(), 0, mReply.position());
+    }
+
+    private void sendTelemetry()
+    {
+        mTelemetry.clear();
+        mTelemetry.putShort(Protocol.toInt16(Math.round(vLeft * 1000)));
+        mTelemetry.putShort(Protocol.toInt16(Math.round(vRight * 1000)));
+        mTelemetry.putShort((short)Math.round(battery * 1000));
+        reply(Protocol.TYPE_TELEMETRY, replySeq, mTelemetry.array(), 0, mTelemetry.position());
+        replySeq = (replySeq + 1) & 0xff;
+    }
+
+    private static float approach(float current, float target, float dt, float maxRate)
+    {
+        float step = (target - current) * Math.min(1.0f, dt / TIME_CONSTANT);
+        float limit = maxRate * dt;
+        if (step > limit) step = limit;
+        if (step < -limit) step = -limit;
+        return current + step;
+    }
+
+    /** Advance the model by dt seconds */
+    void step(float dt)
+    {
+        float left, right;
+        boolean brk;
+        synchronized (this) {
+            if (System.nanoTime() - lastCommandNs > WATCHDOG_NS) {
+                // The phone went quiet, stop like the firmware does
+                targetLeft = targetRight = 0;
+            }
+            left = targetLeft;
+            right = targetRight;
+            brk = braking;
+        }
+        if (brk) left = right = 0;
+        float rate = brk ? MAX_BRAKE : MAX_ACCEL;
+        vLeft = approach(vLeft, left, dt, rate);
+        vRight = approach(vRight, right, dt, rate);
+
+        double v = 0.5 * (vLeft + vRight);
+        double omega = (vRight - vLeft) / Movement.Length;
+        heading += omega * dt;
+        x += v * Math.cos(heading) * dt;
+        y += v * Math.sin(heading) * dt;
+        battery -= (Math.abs(vLeft) + Math.abs(vRight)) * dt * 1e-4f;
+    }
+
+    public synchronized void start()
+    {
+        if (mThread != null) return;
+        mThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                long periodNs = 1000000000L / TICK_HZ;
+                long next = System.nanoTime();
+                try {
+                    for (int tick = 0; !Thread.currentThread().isInterrupted(); tick++) {
+                        step(1.0f / TICK_HZ);
+                        if (tick % TELEMETRY_EVERY == 0) sendTelemetry();
+                        next += periodNs;
+                        long sleep = next - System.nanoTime();
+                        if (sleep > 0) Thread.sleep(sleep / 1000000L, (int)(sleep % 1000000L));
+                    }
+                } catch (InterruptedException e) {
+                    // stopped
+                }
+            }
+        }, "VehicleSimulator");
+        mThread.setDaemon(true);
+        mThread.start();
+    }
+
+    public synchronized void stop()
+    {
+        if (mThread == null) return;
+        mThread.interrupt();
+        mThread = null;
+    }
+
+    public long getLegacyCommands() { return mLegacyDecoder.getCommands(); }
+    public synchronized long getBinaryCommands() { return binaryCommands; }
+    public synchronized long getPings() { return pings; }
+
+    public long getLegacyErrors() { return mLegacyDecoder.getErrors(); }
+    public long getFrameErrors() { return mFrameDecoder.getErrors(); }
+
+    @Override
+    public String toString()
+    {
+        return "legacy=" + getLegacyCommands() + " binary=" + getBinaryCommands()
+                + " pings=" + getPings()
+                + " errors=" + getLegacyErrors() + "/" + getFrameErrors()
+                + " pose=(" + (float)x + "," + (float)y + "," + (float)Math.toDegrees(heading) + "deg)";
+    }
+
+    public static void main(String[] args) throws IOException
+    {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+        ServerSocket server = new ServerSocket(port);
+        System.out.println("listening on " + port);
+        while (true)
+        {
+            Socket socket = server.accept();
+            System.out.println("connected " + socket.getRemoteSocketAddress());
+            VehicleSimulator sim = new VehicleSimulator(new TcpVehicleLink(socket));
+            sim.start();
+        }
+    }
+}